@@ -1,20 +1,27 @@
 package uk.gov.homeoffice.unhcr.cases.reference;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 public class ReferenceData {
 
     public static boolean showSuggestedValuesFlag = true;
 
+    // resource path -> hash of its content, for all loaded reference data (see getLoadedVersion)
+    final private static Map<String, String> loadedResourceHashes = new TreeMap<>();
+
     private Map<String, String> dictionary = new HashMap<>();
 
     private boolean ignoreCaseFlag = false;
@@ -28,9 +35,10 @@ public class ReferenceData {
         referenceData.ignoreCaseFlag = ignoreCaseFlag;
         referenceData.ignoreLeadingZeros = ignoreLeadingZeros;
 
-        try (InputStream inputStream = ReferenceData.class.getResourceAsStream(resourcePath);) {
-            if (inputStream==null) throw new RuntimeException(String.format("Reference data not found %s", resourcePath));
+        try (InputStream resourceStream = ReferenceData.class.getResourceAsStream(resourcePath);) {
+            if (resourceStream==null) throw new RuntimeException(String.format("Reference data not found %s", resourcePath));
 
+            HashingInputStream inputStream = new HashingInputStream(Hashing.sha256(), resourceStream);
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
             Reader reader = new BufferedReader(inputStreamReader);
 
@@ -52,6 +60,10 @@ public class ReferenceData {
 
                 referenceData.dictionary.put(referenceCode, referenceDescription);
             }
+
+            synchronized (loadedResourceHashes) {
+                loadedResourceHashes.put(resourcePath, inputStream.hash().toString());
+            }
         } catch (IOException e) {
             throw new RuntimeException(String.format("Reference data could not be loaded %s", e));
         }
@@ -59,6 +71,13 @@ public class ReferenceData {
         return referenceData;
     }
 
+    // changes when any loaded reference data changes (see ReferenceDataContainer.getVersion)
+    static String getLoadedVersion() {
+        synchronized (loadedResourceHashes) {
+            return Hashing.sha256().hashString(loadedResourceHashes.toString(), StandardCharsets.UTF_8).toString().substring(0, 16);
+        }
+    }
+
     public boolean containsCode(String referenceCode) {
         if (StringUtils.isBlank(referenceCode)) return false;
 
@@ -44,4 +44,8 @@ public class ReferenceDataContainer {
 
     static public ReferenceData vulnerabilityCodeReferenceData  = ReferenceData.loadReferenceData("/uk/gov/homeoffice/unhcr/reference/VulnerabilityCode-Table 1.csv", false, false);
 
+    // fingerprint of all reference data tables above (e.g. part of result cache key)
+    public static String getVersion() {
+        return ReferenceData.getLoadedVersion();
+    }
 }
@@ -0,0 +1,307 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOSupplier;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// reads case files from ZIP, TAR, TAR.GZ (TGZ) and GZ archives as they are streamed, nothing is extracted to disk
+// entries are named 'archive!/entry.xml', each entry is held in memory (up to CaseFileValidator.CASEFILE_SIZE_LIMIT)
+public class CaseFileArchive {
+
+    public enum ArchiveType {
+        ZIP,
+        TAR,
+        TAR_GZ,
+        GZ
+    }
+
+    // reads entry content (e.g. after memory is reserved for it), entry size is -1 when it is not known in advance
+    public interface EntryLoader {
+        CaseFileSource load(String entryName, long entrySize, InputStream entryStream) throws IOException;
+    }
+
+    public static ArchiveType getArchiveType(File file) {
+        String fileName = StringUtils.lowerCase(file.getName());
+        if (fileName.endsWith(".zip")) return ArchiveType.ZIP;
+        if (fileName.endsWith(".tar")) return ArchiveType.TAR;
+        if ((fileName.endsWith(".tar.gz")) || (fileName.endsWith(".tgz"))) return ArchiveType.TAR_GZ;
+        if (fileName.endsWith(".gz")) return ArchiveType.GZ;
+        return null;
+    }
+
+    public static boolean isArchive(File file) {
+        return getArchiveType(file) != null;
+    }
+
+    // archives are replaced by their entries, other files are passed as they are
+    public static Iterator<CaseFileSource> expand(Iterator<File> files) {
+        return Iterators.concat(Iterators.transform(files, file -> isArchive(file) ? entries(file) : Iterators.singletonIterator(CaseFileSource.ofFile(file))));
+    }
+
+    // archive is opened when first entry is requested, and closed after last one
+    public static Iterator<CaseFileSource> entries(File archiveFile) {
+        ArchiveType archiveType = getArchiveType(archiveFile);
+        if (archiveType == null) throw new IllegalArgumentException(String.format("Unsupported archive %s", archiveFile.getPath()));
+
+        return entries(archiveFile.getPath(), archiveFile.getPath() + "!/", archiveType, () -> new FileInputStream(archiveFile));
+    }
+
+    // archive streamed from other source (e.g. web upload), entries are named by their path in archive
+    // stream is closed after last entry
+    public static Iterator<CaseFileSource> entries(String archiveName, ArchiveType archiveType, InputStream inputStream) {
+        return entries(archiveName, archiveType, inputStream, CaseFileArchive::readEntry);
+    }
+
+    // as above, entries are read by given loader
+    public static Iterator<CaseFileSource> entries(String archiveName, ArchiveType archiveType, InputStream inputStream, EntryLoader entryLoader) {
+        return entries(archiveName, "", archiveType, () -> inputStream, entryLoader);
+    }
+
+    private static Iterator<CaseFileSource> entries(String archiveName, String entryNamePrefix, ArchiveType archiveType, IOSupplier<InputStream> archiveStreamSupplier) {
+        return entries(archiveName, entryNamePrefix, archiveType, archiveStreamSupplier, CaseFileArchive::readEntry);
+    }
+
+    private static Iterator<CaseFileSource> entries(String archiveName, String entryNamePrefix, ArchiveType archiveType, IOSupplier<InputStream> archiveStreamSupplier, EntryLoader entryLoader) {
+        return new AbstractIterator<CaseFileSource>() {
+
+            private InputStream inputStream;
+
+            private EntryReader entryReader;
+
+            @Override
+            protected CaseFileSource computeNext() {
+                try {
+                    if (entryReader == null) {
+                        inputStream = new BufferedInputStream(archiveStreamSupplier.get());
+                        entryReader = createEntryReader(archiveType, archiveName, inputStream);
+                    }
+
+                    String entryName = entryReader.nextEntry();
+                    if (entryName == null) {
+                        IOUtils.closeQuietly(inputStream);
+                        return endOfData();
+                    }
+
+                    return entryLoader.load(entryNamePrefix + entryName, entryReader.getEntrySize(), entryReader.getEntryStream());
+                } catch (IOException exception) {
+                    // corrupted (or missing) archive, report it once and stop
+                    IOUtils.closeQuietly(inputStream);
+                    entryReader = EntryReader.EMPTY;
+                    return CaseFileSource.ofError(archiveName, exception);
+                }
+            }
+        };
+    }
+
+    private static CaseFileSource readEntry(String entryName, long entrySize, InputStream entryStream) throws IOException {
+        // read one byte over limit, to find out if entry is too large
+        byte[] bytes = ByteStreams.toByteArray(ByteStreams.limit(entryStream, CaseFileValidator.CASEFILE_SIZE_LIMIT + 1));
+        if (bytes.length > CaseFileValidator.CASEFILE_SIZE_LIMIT) {
+            return CaseFileSource.ofError(entryName, new IOException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CaseFileValidator.CASEFILE_SIZE_LIMIT))));
+        }
+        return CaseFileSource.ofBytes(entryName, bytes);
+    }
+
+    private static EntryReader createEntryReader(ArchiveType archiveType, String archiveName, InputStream inputStream) throws IOException {
+        switch (archiveType) {
+            case ZIP:
+                return new ZipEntryReader(new ZipInputStream(inputStream));
+            case TAR:
+                return new TarEntryReader(inputStream);
+            case TAR_GZ:
+                return new TarEntryReader(new GZIPInputStream(inputStream));
+            case GZ:
+                return new SingleEntryReader(FilenameUtils.getBaseName(archiveName), new GZIPInputStream(inputStream));
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported archive type %s", archiveType));
+        }
+    }
+
+    // entries are read one after another, entry stream is valid until next entry is requested
+    private interface EntryReader {
+
+        EntryReader EMPTY = new SingleEntryReader(null, null);
+
+        // returns null when there are no more (regular file) entries
+        String nextEntry() throws IOException;
+
+        InputStream getEntryStream();
+
+        // -1 when not known (e.g. ZIP entry with data descriptor, GZ)
+        long getEntrySize();
+    }
+
+    private static class ZipEntryReader implements EntryReader {
+
+        final private ZipInputStream zipInputStream;
+
+        private ZipEntry zipEntry;
+
+        ZipEntryReader(ZipInputStream zipInputStream) {
+            this.zipInputStream = zipInputStream;
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            do {
+                zipEntry = zipInputStream.getNextEntry();
+            } while ((zipEntry != null) && (zipEntry.isDirectory()));
+            return (zipEntry != null) ? zipEntry.getName() : null;
+        }
+
+        @Override
+        public InputStream getEntryStream() {
+            return zipInputStream;
+        }
+
+        @Override
+        public long getEntrySize() {
+            return (zipEntry != null) ? zipEntry.getSize() : -1;
+        }
+    }
+
+    private static class SingleEntryReader implements EntryReader {
+
+        private String entryName;
+
+        final private InputStream inputStream;
+
+        SingleEntryReader(String entryName, InputStream inputStream) {
+            this.entryName = entryName;
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public String nextEntry() {
+            String nextEntryName = entryName;
+            entryName = null;
+            return nextEntryName;
+        }
+
+        @Override
+        public InputStream getEntryStream() {
+            return inputStream;
+        }
+
+        @Override
+        public long getEntrySize() {
+            return -1;
+        }
+    }
+
+    // minimal (ustar, GNU long names, pax path) TAR reader, only regular files are returned
+    private static class TarEntryReader implements EntryReader {
+
+        final static private int BLOCK_SIZE = 512;
+
+        final private InputStream inputStream;
+
+        final private byte[] header = new byte[BLOCK_SIZE];
+
+        private InputStream entryStream;
+
+        private long entrySize = -1;
+
+        private long entryPadding = 0;
+
+        TarEntryReader(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            String longName = null;
+            while (true) {
+                // skip rest of previous entry (and padding to block boundary)
+                if (entryStream != null) {
+                    ByteStreams.exhaust(entryStream);
+                    ByteStreams.skipFully(inputStream, entryPadding);
+                    entryStream = null;
+                }
+
+                int read = ByteStreams.read(inputStream, header, 0, BLOCK_SIZE);
+                if ((read == 0) || (isZeroBlock(header))) return null; //end of archive
+                if (read < BLOCK_SIZE) throw new EOFException("Unexpected end of TAR archive");
+
+                long size = parseOctal(header, 124, 12);
+                byte type = header[156];
+
+                entryStream = ByteStreams.limit(inputStream, size);
+                entrySize = size;
+                entryPadding = (BLOCK_SIZE - (size % BLOCK_SIZE)) % BLOCK_SIZE;
+
+                if (type == 'L') {
+                    // GNU long name of next entry
+                    longName = StringUtils.stripEnd(new String(ByteStreams.toByteArray(entryStream), StandardCharsets.UTF_8), "\0");
+                } else if (type == 'x') {
+                    // pax extended header, only path is used
+                    String paxPath = parsePaxPath(new String(ByteStreams.toByteArray(entryStream), StandardCharsets.UTF_8));
+                    if (paxPath != null) longName = paxPath;
+                } else if ((type == '0') || (type == 0) || (type == '7')) {
+                    if (longName != null) return longName;
+
+                    String name = parseString(header, 0, 100);
+                    String prefix = parseString(header, 345, 155);
+                    return StringUtils.isEmpty(prefix) ? name : prefix + "/" + name;
+                } else {
+                    // directories, links, devices...
+                    longName = null;
+                }
+            }
+        }
+
+        @Override
+        public InputStream getEntryStream() {
+            return entryStream;
+        }
+
+        @Override
+        public long getEntrySize() {
+            return entrySize;
+        }
+
+        private static boolean isZeroBlock(byte[] block) {
+            for (byte value : block) {
+                if (value != 0) return false;
+            }
+            return true;
+        }
+
+        private static String parseString(byte[] bytes, int offset, int length) {
+            int end = offset;
+            while ((end < offset + length) && (bytes[end] != 0)) end++;
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private static long parseOctal(byte[] bytes, int offset, int length) throws IOException {
+            String value = StringUtils.trim(parseString(bytes, offset, length));
+            if (StringUtils.isEmpty(value)) return 0;
+            try {
+                return Long.parseLong(value, 8);
+            } catch (NumberFormatException exception) {
+                throw new IOException(String.format("Invalid TAR header (size '%s')", value));
+            }
+        }
+
+        // records are '<length> <key>=<value>\n'
+        private static String parsePaxPath(String paxHeader) {
+            for (String record : StringUtils.split(paxHeader, '\n')) {
+                String keyValue = StringUtils.substringAfter(record, " ");
+                if (keyValue.startsWith("path=")) return keyValue.substring("path=".length());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// validates many case files concurrently (on work-stealing pool), largest files are scheduled first
+// results are passed to consumer on the calling thread, in submission order or as they complete
+public class CaseFileBatchValidator {
+
+    public enum OutputOrder {
+        SUBMISSION,
+        COMPLETION
+    }
+
+    // number of case files (taken from iterator) validated or waiting at once, files are sorted by size within this window
+    static public int schedulingWindowSize = 1024;
+
+    // archive entries held in memory (read, but not validated yet) are limited to this size (at least one entry is always read)
+    static public long bufferedSizeLimit = Runtime.getRuntime().maxMemory() / 4;
+
+    final private CaseFileValidator parentValidator = new CaseFileValidator();
+
+    final private List<BaseCaseFileValidator> validators;
+
+    final private MemoryBudget memoryBudget;
+
+    final private int threads;
+
+    private ValidationManifest validationManifest;
+
+    final private OutputOrder outputOrder;
+
+    public CaseFileBatchValidator(List<BaseCaseFileValidator> validators, int threads, OutputOrder outputOrder) {
+        this(validators, threads, outputOrder, MemoryBudget.getDefault());
+    }
+
+    public CaseFileBatchValidator(List<BaseCaseFileValidator> validators, int threads, OutputOrder outputOrder, MemoryBudget memoryBudget) {
+        if (threads < 1) throw new IllegalArgumentException("number of threads must be positive");
+
+        this.validators = validators;
+        this.memoryBudget = memoryBudget;
+        this.threads = threads;
+        this.outputOrder = outputOrder;
+    }
+
+    // results of unchanged case files are replayed from manifest, new results are recorded
+    public void setValidationManifest(ValidationManifest validationManifest) {
+        this.validationManifest = validationManifest;
+    }
+
+    // returns number of failed case files
+    public int validate(List<File> caseFiles, Consumer<ValidationResult> resultConsumer) throws InterruptedException {
+        // whole list is known, so all files are scheduled (largest first) at once
+        return validate(Iterators.transform(caseFiles.iterator(), CaseFileSource::ofFile), Math.max(caseFiles.size(), 1), resultConsumer);
+    }
+
+    // sources are taken from iterator (e.g. lazy directory walker, archive entries) as validation progresses, largest first within scheduling window
+    public int validate(Iterator<CaseFileSource> caseFileSources, Consumer<ValidationResult> resultConsumer) throws InterruptedException {
+        return validate(caseFileSources, schedulingWindowSize, resultConsumer);
+    }
+
+    private int validate(Iterator<CaseFileSource> caseFileSources, int windowSize, Consumer<ValidationResult> resultConsumer) throws InterruptedException {
+        if (threads == 1) {
+            // no pool needed, sequential order
+            int failures = 0;
+            while (caseFileSources.hasNext()) {
+                ValidationResult validationResult = validate(caseFileSources.next());
+                if (validationResult.isFailure()) failures++;
+                resultConsumer.accept(validationResult);
+            }
+            return failures;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            CompletionService<ValidationResult> completionService = new ExecutorCompletionService<>(pool);
+
+            // futures are kept (in submission order) only when results are passed in submission order
+            Deque<Future<ValidationResult>> futures = new ArrayDeque<>();
+            int inFlight = 0;
+
+            // content held in memory (archive entries) by sources which are not validated yet
+            AtomicLong bufferedInFlight = new AtomicLong();
+
+            int failures = 0;
+            while (true) {
+                // refill when window is half empty, so that there are enough files to sort by size
+                if ((inFlight <= windowSize / 2) && (caseFileSources.hasNext())) {
+                    List<CaseFileSource> chunk = new ArrayList<>();
+                    while (
+                            (inFlight + chunk.size() < windowSize) &&
+                            ((inFlight + chunk.size() == 0) || (bufferedInFlight.get() < bufferedSizeLimit)) &&
+                            (caseFileSources.hasNext())
+                    ) {
+                        CaseFileSource caseFileSource = caseFileSources.next();
+                        bufferedInFlight.addAndGet(caseFileSource.getBufferedSize());
+                        chunk.add(caseFileSource);
+                    }
+
+                    List<Future<ValidationResult>> chunkFutures = submitLargestFirst(chunk, bufferedInFlight, completionService);
+                    if (outputOrder == OutputOrder.SUBMISSION) futures.addAll(chunkFutures);
+                    inFlight += chunk.size();
+                }
+
+                if (inFlight == 0) break;
+
+                Future<ValidationResult> future = (outputOrder == OutputOrder.SUBMISSION) ? futures.poll() : completionService.take();
+                inFlight--;
+
+                ValidationResult validationResult = getResult(future);
+                if (validationResult.isFailure()) failures++;
+                resultConsumer.accept(validationResult);
+            }
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // returns futures in the same order as sources
+    private List<Future<ValidationResult>> submitLargestFirst(List<CaseFileSource> caseFileSources, AtomicLong bufferedInFlight, CompletionService<ValidationResult> completionService) {
+        List<Integer> scheduleOrder = IntStream.range(0, caseFileSources.size()).boxed()
+                .sorted(Comparator.comparingLong((Integer index) -> caseFileSources.get(index).getSize()).reversed())
+                .collect(Collectors.toList());
+
+        List<Future<ValidationResult>> futures = new ArrayList<>(Collections.nCopies(caseFileSources.size(), null));
+        for (int index : scheduleOrder) {
+            CaseFileSource caseFileSource = caseFileSources.get(index);
+            futures.set(index, completionService.submit(() -> {
+                try {
+                    return validate(caseFileSource);
+                } catch (Throwable throwable) {
+                    // validate(CaseFileSource) catches exceptions, so it is an unexpected error (e.g. OutOfMemoryError), still reported for this case file
+                    return errorResult(caseFileSource.getName(), throwable);
+                } finally {
+                    bufferedInFlight.addAndGet(-caseFileSource.getBufferedSize());
+                }
+            }));
+        }
+        return futures;
+    }
+
+    public ValidationResult validate(File caseFile) {
+        return validate(CaseFileSource.ofFile(caseFile));
+    }
+
+    public ValidationResult validate(CaseFileSource caseFileSource) {
+        // content is hashed once for manifest and result cache, by lookup (touched file) or as validators read it
+        HashingByteSource hashingByteSource = (validationManifest != null) ? new HashingByteSource(caseFileSource.getByteSource()) : null;
+
+        // unchanged case files are not validated again
+        if (validationManifest != null) {
+            try {
+                Optional<ValidationResult> optionalValidationResult = validationManifest.lookup(caseFileSource, () -> hashingByteSource.hash(Hashing.sha256()).toString());
+                if (optionalValidationResult.isPresent()) return optionalValidationResult.get();
+            } catch (IOException exception) {
+                //cannot be read, error is reported by validation
+            }
+        }
+
+        ValidationResult validationResult;
+        boolean validatedFlag = false;
+        try {
+            // format is sniffed from file prefix, file is read whole only by validators which need it
+            ByteSource byteSource = caseFileSource.getByteSource();
+            CaseFileFormat caseFileFormat = CaseFileFormat.detect(byteSource);
+            if (hashingByteSource != null) byteSource = hashingByteSource;
+
+            // wait till there is enough memory (estimated by applicable validators) before case file is read
+            long memoryCost = parentValidator.estimateMemoryCost(caseFileSource.getSize(), caseFileFormat, validators);
+            long memoryReserved = memoryBudget.acquire(memoryCost);
+            try {
+                validationResult = parentValidator.validate(byteSource, caseFileFormat, validators);
+                validatedFlag = true;
+            } finally {
+                memoryBudget.release(memoryReserved);
+            }
+        } catch (Exception exception) {
+            // create error object, e.g. file not found, cannot read, etc.
+            validationResult = new ValidationResult();
+            validationResult.addError(exception.getMessage());
+        }
+        validationResult.setFileName(caseFileSource.getName());
+
+        // read errors (e.g. missing file) are not recorded, they are reported again by next run
+        if ((validationManifest != null) && (validatedFlag)) {
+            try {
+                // validators stopped before the end (e.g. malformed xml), content is hashed now
+                String contentHash = hashingByteSource.getHash();
+                if (contentHash == null) contentHash = caseFileSource.getByteSource().hash(Hashing.sha256()).toString();
+                validationManifest.record(caseFileSource, contentHash, validationResult);
+            } catch (IOException exception) {
+                // result is still reported, case file is validated again by next run
+                System.err.println(String.format("Cannot record %s in validation manifest: %s", caseFileSource.getName(), exception.getMessage()));
+            }
+        }
+
+        return validationResult;
+    }
+
+    private ValidationResult getResult(Future<ValidationResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            // submitted task reports its errors as result, name of case file is not known here
+            return errorResult(null, exception.getCause());
+        }
+    }
+
+    private static ValidationResult errorResult(String fileName, Throwable throwable) {
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setFileName(fileName);
+        validationResult.addError(throwable.toString());
+        return validationResult;
+    }
+}
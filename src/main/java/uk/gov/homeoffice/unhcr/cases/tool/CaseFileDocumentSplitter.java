@@ -0,0 +1,186 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.AbstractIterator;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+
+// splits stream of case files (e.g. piped to standard input) into separate documents, without temporary files
+// each document is either:
+//  - xml document (optional declaration, comments, doctype and one root element), it ends with root element end tag
+//  - length-prefixed document: decimal length in bytes and new line, followed by exactly that many bytes
+// documents can be separated by white space, only one document is held in memory at a time (up to case file size limit)
+// note: xml is scanned at byte level, so only ASCII-compatible encodings (e.g. UTF-8, ISO-8859-1) are supported
+public class CaseFileDocumentSplitter extends AbstractIterator<CaseFileSource> {
+
+    final private InputStream inputStream;
+
+    final private String namePrefix;
+
+    private int documentCount = 0;
+
+    // current document, null when document is too large (and skipped)
+    private ByteArrayOutputStream document;
+
+    public CaseFileDocumentSplitter(InputStream inputStream, String namePrefix) {
+        this.inputStream = (inputStream instanceof BufferedInputStream) ? inputStream : new BufferedInputStream(inputStream);
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    protected CaseFileSource computeNext() {
+        String name = null;
+        try {
+            int first = skipWhitespace();
+            if (first == -1) return endOfData();
+
+            name = String.format("%s#%d", namePrefix, ++documentCount);
+            document = new ByteArrayOutputStream();
+
+            if ((first >= '0') && (first <= '9')) {
+                readLengthPrefixed(first);
+            } else {
+                append(first);
+                readXml(first);
+            }
+
+            if (document == null)
+                return CaseFileSource.ofError(name, new IOException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CaseFileValidator.CASEFILE_SIZE_LIMIT))));
+
+            return CaseFileSource.ofBytes(name, document.toByteArray());
+        } catch (IOException exception) {
+            // e.g. truncated length-prefixed document, input cannot be read further
+            return (name == null) ? endOfData() : CaseFileSource.ofError(name, exception);
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int character;
+        do {
+            character = inputStream.read();
+        } while ((character == ' ') || (character == '\t') || (character == '\r') || (character == '\n') || (character == '\0'));
+        return character;
+    }
+
+    private void readLengthPrefixed(int first) throws IOException {
+        long length = first - '0';
+        int character;
+        while (((character = inputStream.read()) >= '0') && (character <= '9')) {
+            length = length * 10 + (character - '0');
+            if (length > Integer.MAX_VALUE) throw new IOException("Invalid document length");
+        }
+        if (character == '\r') character = inputStream.read();
+        if (character != '\n') throw new IOException("Invalid document length, new line expected after length");
+
+        if (length > CaseFileValidator.CASEFILE_SIZE_LIMIT) document = null;
+        for (long remaining = length; remaining > 0; remaining--) {
+            character = inputStream.read();
+            if (character == -1) throw new IOException(String.format("Unexpected end of input, %d bytes of document are missing", remaining));
+            append(character);
+        }
+    }
+
+    // reads till root element ends (or input ends, then incomplete document is reported by validation)
+    private void readXml(int first) throws IOException {
+        int depth = 0;
+        int character = first;
+        while (true) {
+            if (character == '<') {
+                int next = read();
+                if (next == -1) return;
+
+                if (next == '?') {
+                    // xml declaration or processing instruction
+                    readUntil("?>");
+                } else if (next == '!') {
+                    int markup = read();
+                    if (markup == '-') {
+                        // comment text starts after '<!--' (terminator is matched only against characters read after it, e.g. '<!---->'),
+                        // malformed '<!-x' ends at '>', rest of input is not swallowed
+                        int second = read();
+                        if (second == '-') readUntil("-->");
+                        else readDoctype(second);
+                    } else if (markup == '[') {
+                        readUntil("]]>");
+                    } else {
+                        readDoctype(markup);
+                    }
+                } else if (next == '/') {
+                    readTag();
+                    if (--depth <= 0) return;
+                } else {
+                    // empty element (e.g. <CASE/>) does not change depth
+                    if (readTag() != '/') depth++;
+                    else if (depth == 0) return;
+                }
+            }
+
+            character = read();
+            if (character == -1) return;
+        }
+    }
+
+    // returns character before '>'
+    private int readTag() throws IOException {
+        int quote = -1;
+        int previous = -1;
+        int character;
+        while ((character = read()) != -1) {
+            if (quote != -1) {
+                if (character == quote) quote = -1;
+            } else if ((character == '"') || (character == '\'')) {
+                quote = character;
+            } else if (character == '>') {
+                return previous;
+            }
+            previous = character;
+        }
+        return previous;
+    }
+
+    private void readDoctype(int character) throws IOException {
+        // internal subset (in brackets) can contain '>'
+        int bracketDepth = 0;
+        while (character != -1) {
+            if (character == '[') bracketDepth++;
+            else if (character == ']') bracketDepth--;
+            else if ((character == '>') && (bracketDepth <= 0)) return;
+            character = read();
+        }
+    }
+
+    private void readUntil(String terminator) throws IOException {
+        // last characters read, compared with terminator
+        char[] tail = new char[terminator.length()];
+        int count = 0;
+        int character;
+        while ((character = read()) != -1) {
+            System.arraycopy(tail, 1, tail, 0, tail.length - 1);
+            tail[tail.length - 1] = (char) character;
+            if ((++count >= tail.length) && (endsWith(tail, terminator))) return;
+        }
+    }
+
+    private static boolean endsWith(char[] tail, String terminator) {
+        for (int index = 0; index < tail.length; index++) {
+            if (tail[index] != terminator.charAt(index)) return false;
+        }
+        return true;
+    }
+
+    private int read() throws IOException {
+        int character = inputStream.read();
+        if (character != -1) append(character);
+        return character;
+    }
+
+    private void append(int character) {
+        if (document == null) return;
+        if (document.size() >= CaseFileValidator.CASEFILE_SIZE_LIMIT) {
+            // too large, rest of document is skipped
+            document = null;
+            return;
+        }
+        document.write(character);
+    }
+}
@@ -0,0 +1,112 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// result of scanning raw case file bytes for root element and version markers
+// it is detected once per case file and then passed to every validator (see BaseCaseFileValidator.isApplicable)
+public class CaseFileFormat {
+
+    final static private byte[] ROOT_ELEMENT_MARKER = "<UNHCR_RRF".getBytes(StandardCharsets.US_ASCII);
+
+    final static private byte[] INDIVIDUAL_GUID_MARKER = "<IndividualGUID".getBytes(StandardCharsets.US_ASCII);
+
+    // markers are searched in this prefix first
+    static public int sniffPrefixSize = 64 * 1024;
+
+    // when markers are not found in prefix, scan the rest of file (e.g. V3 files never have IndividualGUID)
+    static public boolean lateMarkersFallbackFlag = true;
+
+    private boolean rootElementFound;
+
+    private boolean individualGuidFound;
+
+    private CaseFileFormat() {}
+
+    public boolean isRootElementFound() {
+        return rootElementFound;
+    }
+
+    public boolean isIndividualGuidFound() {
+        return individualGuidFound;
+    }
+
+    public static CaseFileFormat detect(byte[] bytes) {
+        CaseFileFormat caseFileFormat = new CaseFileFormat();
+
+        int prefixLength = Math.min(bytes.length, sniffPrefixSize);
+        caseFileFormat.rootElementFound = indexOf(bytes, 0, prefixLength, ROOT_ELEMENT_MARKER) >= 0;
+        caseFileFormat.individualGuidFound = indexOf(bytes, 0, prefixLength, INDIVIDUAL_GUID_MARKER) >= 0;
+
+        if ((lateMarkersFallbackFlag) && (prefixLength < bytes.length)) {
+            // restart slightly earlier, in case marker crosses prefix boundary
+            int fromIndex = Math.max(0, prefixLength - INDIVIDUAL_GUID_MARKER.length);
+            if (!caseFileFormat.rootElementFound)
+                caseFileFormat.rootElementFound = indexOf(bytes, fromIndex, bytes.length, ROOT_ELEMENT_MARKER) >= 0;
+            if (!caseFileFormat.individualGuidFound)
+                caseFileFormat.individualGuidFound = indexOf(bytes, fromIndex, bytes.length, INDIVIDUAL_GUID_MARKER) >= 0;
+        }
+
+        return caseFileFormat;
+    }
+
+    // reads prefix (and, if needed, the rest of source) in small buffers, whole file is never loaded into memory
+    public static CaseFileFormat detect(ByteSource byteSource) throws IOException {
+        CaseFileFormat caseFileFormat = new CaseFileFormat();
+
+        final int overlap = Math.max(ROOT_ELEMENT_MARKER.length, INDIVIDUAL_GUID_MARKER.length) - 1;
+        byte[] buffer = new byte[Math.max(sniffPrefixSize, 8 * 1024) + overlap];
+
+        try (InputStream inputStream = byteSource.openStream()) {
+            long totalRead = 0;
+            int carried = 0;
+            while ((!caseFileFormat.rootElementFound) || (!caseFileFormat.individualGuidFound)) {
+                if ((!lateMarkersFallbackFlag) && (totalRead >= sniffPrefixSize)) break;
+
+                // first read is exactly the prefix
+                int readLength = (totalRead == 0) ? Math.min(sniffPrefixSize, buffer.length) : buffer.length - carried;
+                int read = readFully(inputStream, buffer, carried, readLength);
+                if (read <= 0) break;
+                totalRead += read;
+
+                int length = carried + read;
+                if (!caseFileFormat.rootElementFound)
+                    caseFileFormat.rootElementFound = indexOf(buffer, 0, length, ROOT_ELEMENT_MARKER) >= 0;
+                if (!caseFileFormat.individualGuidFound)
+                    caseFileFormat.individualGuidFound = indexOf(buffer, 0, length, INDIVIDUAL_GUID_MARKER) >= 0;
+
+                // keep tail of buffer, in case marker crosses buffer boundary
+                carried = Math.min(overlap, length);
+                System.arraycopy(buffer, length - carried, buffer, 0, carried);
+            }
+        }
+
+        return caseFileFormat;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(buffer, offset + total, length - total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static int indexOf(byte[] bytes, int fromIndex, int toIndex, byte[] marker) {
+        int lastIndex = toIndex - marker.length;
+        outer:
+        for (int index = fromIndex; index <= lastIndex; index++) {
+            if (bytes[index] != marker[0]) continue;
+            for (int markerIndex = 1; markerIndex < marker.length; markerIndex++) {
+                if (bytes[index + markerIndex] != marker[markerIndex]) continue outer;
+            }
+            return index;
+        }
+        return -1;
+    }
+}
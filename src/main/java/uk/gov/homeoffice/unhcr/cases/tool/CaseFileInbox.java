@@ -0,0 +1,224 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// validates all case files in inbox directory (in parallel) and moves each to accepted or rejected directory as soon as its result is final
+// rejected case file gets a sidecar result file (e.g. case.xml.result.txt), written before the case file is moved
+// archive is moved as a whole, once all its entries are validated (it is accepted only when every entry passes)
+// file with no case file validated (e.g. empty archive) is rejected, its sidecar says so
+// sub-directories of inbox are kept, existing files in accepted (rejected) directory are replaced
+public class CaseFileInbox {
+
+    final private Path inboxDirectory;
+
+    final private Path acceptedDirectory;
+
+    final private Path rejectedDirectory;
+
+    final private CaseFileBatchValidator batchValidator;
+
+    final private ValidationResultWriter.Format sidecarFormat;
+
+    // inbox files with results still pending (or not moved yet)
+    final private Map<String, InboxFile> inboxFiles = new HashMap<>();
+
+    // rejected files without any validation result (not counted by batch validator)
+    final private AtomicInteger emptyFiles = new AtomicInteger();
+
+    private static class InboxFile {
+
+        final File file;
+
+        final List<ValidationResult> validationResults = new ArrayList<>();
+
+        int pending = 0;
+
+        // all case files (archive entries) are submitted
+        boolean submitted = false;
+
+        InboxFile(File file) {
+            this.file = file;
+        }
+
+        boolean isAccepted() {
+            return (!validationResults.isEmpty()) && (validationResults.stream().allMatch(ValidationResult::isSuccess));
+        }
+    }
+
+    public CaseFileInbox(File inboxDirectory, File acceptedDirectory, File rejectedDirectory, CaseFileBatchValidator batchValidator, ValidationResultWriter.Format sidecarFormat) {
+        if (!inboxDirectory.isDirectory()) throw new IllegalArgumentException(String.format("not a directory: %s", inboxDirectory));
+        // moved files would be validated again
+        for (File directory : Arrays.asList(acceptedDirectory, rejectedDirectory)) {
+            if (directory.getAbsoluteFile().toPath().normalize().startsWith(inboxDirectory.getAbsoluteFile().toPath().normalize()))
+                throw new IllegalArgumentException(String.format("%s cannot be inside inbox %s", directory, inboxDirectory));
+        }
+
+        this.inboxDirectory = inboxDirectory.toPath();
+        this.acceptedDirectory = acceptedDirectory.toPath();
+        this.rejectedDirectory = rejectedDirectory.toPath();
+        this.batchValidator = batchValidator;
+        this.sidecarFormat = sidecarFormat;
+    }
+
+    // returns number of failed case files, results are passed to consumer (in completion order) as they are ready
+    public int process(Consumer<ValidationResult> resultConsumer) throws InterruptedException, IOException {
+        Files.createDirectories(acceptedDirectory);
+        Files.createDirectories(rejectedDirectory);
+
+        int failures = batchValidator.validate(new InboxIterator(CaseFileWalker.expand(inboxDirectory.toString())), validationResult -> {
+            resultConsumer.accept(validationResult);
+            complete(validationResult);
+        });
+
+        // e.g. empty archive
+        List<InboxFile> remainingFiles;
+        synchronized (this) {
+            remainingFiles = new ArrayList<>(inboxFiles.values());
+            inboxFiles.clear();
+        }
+        for (InboxFile inboxFile : remainingFiles) move(inboxFile);
+
+        return failures + emptyFiles.get();
+    }
+
+    // case files of inbox, archives are replaced by their entries
+    private class InboxIterator extends AbstractIterator<CaseFileSource> {
+
+        final private Iterator<File> files;
+
+        private InboxFile currentFile;
+
+        private Iterator<CaseFileSource> currentSources = Collections.emptyIterator();
+
+        InboxIterator(Iterator<File> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected CaseFileSource computeNext() {
+            while (true) {
+                if (currentSources.hasNext()) {
+                    CaseFileSource caseFileSource = currentSources.next();
+                    synchronized (CaseFileInbox.this) {
+                        currentFile.pending++;
+                    }
+                    return caseFileSource;
+                }
+
+                if (currentFile != null) {
+                    InboxFile submittedFile = currentFile;
+                    currentFile = null;
+                    boolean completeFlag;
+                    synchronized (CaseFileInbox.this) {
+                        submittedFile.submitted = true;
+                        completeFlag = (submittedFile.pending == 0);
+                        if (completeFlag) inboxFiles.remove(submittedFile.file.getPath());
+                    }
+                    if (completeFlag) move(submittedFile);
+                }
+
+                if (!files.hasNext()) return endOfData();
+
+                File file = files.next();
+                currentFile = new InboxFile(file);
+                synchronized (CaseFileInbox.this) {
+                    inboxFiles.put(file.getPath(), currentFile);
+                }
+                currentSources = CaseFileArchive.isArchive(file) ? CaseFileArchive.entries(file) : Iterators.singletonIterator(CaseFileSource.ofFile(file));
+            }
+        }
+    }
+
+    private void complete(ValidationResult validationResult) {
+        InboxFile completedFile = null;
+        synchronized (this) {
+            InboxFile inboxFile = findInboxFile(validationResult.getFileName());
+            if (inboxFile == null) return;
+
+            inboxFile.validationResults.add(validationResult);
+            inboxFile.pending--;
+            if ((inboxFile.submitted) && (inboxFile.pending == 0)) {
+                inboxFiles.remove(inboxFile.file.getPath());
+                completedFile = inboxFile;
+            }
+        }
+        if (completedFile != null) move(completedFile);
+    }
+
+    // archive entries are named 'archive.zip!/entry.xml', directory names may contain '!/' too (e.g. 'inbox/foo!/case.xml')
+    private InboxFile findInboxFile(String fileName) {
+        if (fileName == null) return null;
+
+        InboxFile inboxFile = inboxFiles.get(fileName);
+        int separatorIndex = fileName.indexOf("!/");
+        while ((inboxFile == null) && (separatorIndex >= 0)) {
+            inboxFile = inboxFiles.get(fileName.substring(0, separatorIndex));
+            separatorIndex = fileName.indexOf("!/", separatorIndex + 1);
+        }
+        return inboxFile;
+    }
+
+    private void move(InboxFile inboxFile) {
+        boolean acceptedFlag = inboxFile.isAccepted();
+        Path source = inboxFile.file.toPath();
+        Path target = (acceptedFlag ? acceptedDirectory : rejectedDirectory).resolve(inboxDirectory.relativize(source));
+
+        List<ValidationResult> validationResults = inboxFile.validationResults;
+        if (validationResults.isEmpty()) {
+            // e.g. empty archive, there is nothing to accept
+            ValidationResult validationResult = new ValidationResult();
+            validationResult.setFileName(source.toString());
+            validationResult.addError("No case file found, nothing was validated");
+            validationResults = Collections.singletonList(validationResult);
+            emptyFiles.incrementAndGet();
+        }
+
+        try {
+            Files.createDirectories(target.getParent());
+            if (!acceptedFlag) writeSidecar(validationResults, target);
+            moveAtomically(source, target);
+        } catch (IOException exception) {
+            // e.g. case file removed from inbox during validation, it stays there (or is gone) and is processed by next run
+            System.err.println(String.format("Cannot move %s to %s: %s", source, target, exception.getMessage()));
+        }
+    }
+
+    private void writeSidecar(List<ValidationResult> validationResults, Path target) throws IOException {
+        Path sidecar = target.resolveSibling(target.getFileName() + ".result." + getSidecarExtension());
+        Path temporarySidecar = target.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (ValidationResultWriter resultWriter = new ValidationResultWriter(sidecarFormat, Files.newBufferedWriter(temporarySidecar, StandardCharsets.UTF_8))) {
+            for (ValidationResult validationResult : validationResults) resultWriter.write(validationResult);
+        }
+        moveAtomically(temporarySidecar, sidecar);
+    }
+
+    private String getSidecarExtension() {
+        switch (sidecarFormat) {
+            case JSONL: return "json";
+            case CSV: return "csv";
+            default: return "txt";
+        }
+    }
+
+    // readers of target directory never see partially written file
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            // different file systems, copy next to target first, then rename there
+            Path temporaryTarget = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.copy(source, temporaryTarget, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryTarget, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(source);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+// deterministic partition of case files across nodes (--shard i/n), e.g. nodes validating the same NFS directory
+// case file is assigned by stable hash of its relative path (see CaseFileWalker), so every node agrees without coordination
+public class CaseFileShard implements Predicate<String> {
+
+    // 1-based
+    final private int index;
+
+    final private int count;
+
+    public CaseFileShard(int index, int count) {
+        if ((count < 1) || (index < 1) || (index > count))
+            throw new IllegalArgumentException(String.format("shard must be i/n, where 1 <= i <= n: %d/%d", index, count));
+
+        this.index = index;
+        this.count = count;
+    }
+
+    public static CaseFileShard parse(String shardOption) {
+        String[] parts = StringUtils.split(StringUtils.trim(shardOption), '/');
+        try {
+            if ((parts == null) || (parts.length != 2)) throw new NumberFormatException();
+            return new CaseFileShard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("shard must be i/n, e.g. 1/4: %s", shardOption));
+        }
+    }
+
+    // relative path with '/' separators
+    @Override
+    public boolean test(String relativePath) {
+        int hash = Hashing.sha256().hashString(relativePath, StandardCharsets.UTF_8).asInt();
+        return Math.floorMod(hash, count) == index - 1;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d", index, count);
+    }
+}
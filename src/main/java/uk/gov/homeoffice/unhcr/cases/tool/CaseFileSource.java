@@ -0,0 +1,99 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+// named case file content for batch validation: file on disk, entry read from archive, or error (e.g. corrupted archive)
+public class CaseFileSource {
+
+    final private String name;
+
+    final private long size;
+
+    // last modification time of file on disk (0 for in-memory content)
+    final private long lastModified;
+
+    // size of content held in memory (0 for files on disk)
+    final private long bufferedSize;
+
+    final private ByteSource byteSource;
+
+    // content held in memory (null for files on disk)
+    private byte[] bytes;
+
+    // memory budget reserved for content held in memory, released by the one validating (or discarding) it
+    private long memoryReserved = 0;
+
+    private CaseFileSource(String name, long size, long lastModified, long bufferedSize, ByteSource byteSource) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.bufferedSize = bufferedSize;
+        this.byteSource = byteSource;
+    }
+
+    public static CaseFileSource ofFile(File file) {
+        return new CaseFileSource(file.getPath(), file.length(), file.lastModified(), 0, Files.asByteSource(file));
+    }
+
+    public static CaseFileSource ofBytes(String name, byte[] bytes) {
+        CaseFileSource caseFileSource = new CaseFileSource(name, bytes.length, 0, bytes.length, ByteSource.wrap(bytes));
+        caseFileSource.bytes = bytes;
+        return caseFileSource;
+    }
+
+    // content read after memory was reserved for it (see MemoryBudget)
+    public static CaseFileSource ofBytes(String name, byte[] bytes, long memoryReserved) {
+        CaseFileSource caseFileSource = ofBytes(name, bytes);
+        caseFileSource.memoryReserved = memoryReserved;
+        return caseFileSource;
+    }
+
+    // content of known size read from other source (e.g. uploaded part)
+    public static CaseFileSource ofByteSource(String name, long size, ByteSource byteSource) {
+        return new CaseFileSource(name, size, 0, 0, byteSource);
+    }
+
+    // error is reported when content is read
+    public static CaseFileSource ofError(String name, IOException exception) {
+        return new CaseFileSource(name, 0, 0, 0, new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                throw exception;
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getBufferedSize() {
+        return bufferedSize;
+    }
+
+    public long getMemoryReserved() {
+        return memoryReserved;
+    }
+
+    public ByteSource getByteSource() {
+        return byteSource;
+    }
+
+    // content held in memory is returned as it is (ByteSource.read() would copy it)
+    public byte[] read() throws IOException {
+        return (bytes != null) ? bytes : byteSource.read();
+    }
+}
@@ -1,22 +1,39 @@
 package uk.gov.homeoffice.unhcr.cases.tool;
 
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import org.apache.commons.cli.*;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOSupplier;
+import org.apache.commons.io.output.CloseShieldWriter;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
+import uk.gov.homeoffice.unhcr.cases.tool.daemon.CaseFileValidatorClient;
+import uk.gov.homeoffice.unhcr.cases.tool.daemon.CaseFileValidatorDaemon;
 import uk.gov.homeoffice.unhcr.cases.tool.gui.CaseFileValidatorApplication;
+import uk.gov.homeoffice.unhcr.cases.tool.webserver.CaseFileValidatorHandler;
 import uk.gov.homeoffice.unhcr.cases.tool.webserver.CaseFileValidatorWebServer;
 import uk.gov.homeoffice.unhcr.config.ConfigProperties;
 import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.ImageProbe;
 import uk.gov.homeoffice.unhcr.version.GitHubVersionChecker;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class CaseFileValidator extends BaseCaseFileValidator {
 
+    final static public int CASEFILE_SIZE_LIMIT = 50 * 1024 * 1024; //50MB limit (web upload, archive entry)
+
+    // results of identical case files are reused (null - no cache), it is set by command line (also for GUI, web server and daemon)
+    static public ValidationResultCache resultCache = null;
+
     static public String NAME_AND_VERSION = String.format("UNHCR eRRF Validation Tool %s", GitHubVersionChecker.getCurrentVersion());
 
     private static Option helpOption = Option.builder("h").longOpt("help")
@@ -35,25 +52,120 @@ public class CaseFileValidator extends BaseCaseFileValidator {
             .desc("start embedded web-server on a given port\n(Java version 11 (or higher) is required)")
             .required(false).hasArg(true).numberOfArgs(1).build();
 
+    private static Option virtualThreadsOption = Option.builder().longOpt("virtual-threads")
+            .desc("web-server handles requests and validations on virtual threads (validations are still limited by --threads)\n(Java version 21 (or higher) is required, or Java 19-20 started with --enable-preview)")
+            .required(false).hasArg(false).build();
+
+    private static Option webQueueOption = Option.builder().longOpt("web-queue")
+            .desc(String.format("number of web-server validation requests waiting for a thread (default %d), further requests get 503 (Service Unavailable)\n(validations run in parallel are set by --threads, default number of CPUs)", CaseFileValidatorHandler.DEFAULT_VALIDATION_QUEUE_SIZE))
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
     private static Option deleteConfigFileOption = Option.builder().longOpt("delete-config")
             .desc("delete local config file")
             .required(false).hasArg(false).build();
 
     private static Option fileOption = Option.builder("f").longOpt("file")
-            .desc("case files to validate (space-separated)\n(multiple files can be validated)")
+            .desc("case files to validate (space-separated)\n(multiple files, directories, globs, e.g. 'inbox/**/*.xml', and archives (zip, tar, tar.gz, gz) can be validated)")
             .required(false).hasArg(true).numberOfArgs(Option.UNLIMITED_VALUES).build();
 
     private static Option parserOption = Option.builder("p").longOpt("parser")
             .desc(String.format("parser version(s) to use (space-separated): %s\n(also supports wild-chars, e.g. 'v4*')", BaseCaseFileValidator.getValidatorIds().stream().sorted().collect(Collectors.joining(" "))))
             .required(false).hasArg(true).numberOfArgs(Option.UNLIMITED_VALUES).build();
 
+    private static Option strictImagesOption = Option.builder().longOpt("strict-images")
+            .desc("fully decode photos (slower)\n(by default only image headers are read to check format and dimensions)")
+            .required(false).hasArg(false).build();
+
+    private static Option threadsOption = Option.builder().longOpt("threads")
+            .desc("number of case files validated in parallel (default 1, 0 - number of CPUs)\n(largest files are validated first)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option outputOrderOption = Option.builder().longOpt("output-order")
+            .desc("order of results when validated in parallel: submission (default) or completion")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option formatOption = Option.builder().longOpt("format")
+            .desc("format of results: text (default), jsonl or csv\n(each result is written as soon as it is ready)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option outputOption = Option.builder("o").longOpt("output")
+            .desc("file to write results to (default is standard output)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option manifestOption = Option.builder().longOpt("manifest")
+            .desc("journal of validation results, only new or changed case files are validated (results of others are replayed)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option filesFromOption = Option.builder().longOpt("files-from")
+            .desc("read names of case files to validate from a given file ('-' for standard input)\n(NUL-delimited, e.g. from 'find -print0', or one per line)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option stdinDocumentsOption = Option.builder().longOpt("stdin-documents")
+            .desc("validate case files piped to standard input\n(concatenated xml documents, or each prefixed by its length in bytes and new line)")
+            .required(false).hasArg(false).build();
+
+    private static Option shardOption = Option.builder().longOpt("shard")
+            .desc("validate only i-th of n parts of case files (e.g. 1/4), to split validation of the same files across nodes\n(case file is assigned by stable hash of its path relative to directory or glob)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option cacheOption = Option.builder().longOpt("cache")
+            .desc("keep validation results in a given directory (by content hash), so identical case files are not validated again by later runs\n(GUI, web server, daemon and watch cache results in memory without it)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option summaryOption = Option.builder().longOpt("summary")
+            .desc("report summary after results: pass/fail counts per validator, the most frequent errors and directories with most failures, throughput")
+            .required(false).hasArg(false).build();
+
+    private static Option inboxOption = Option.builder().longOpt("inbox")
+            .desc("validate case files in a given directory and move them to --accepted or --rejected directory (rejected with result file)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option acceptedOption = Option.builder().longOpt("accepted")
+            .desc("directory for case files which pass validation (see --inbox)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option rejectedOption = Option.builder().longOpt("rejected")
+            .desc("directory for case files which fail validation, each with result file, e.g. case.xml.result.txt (see --inbox)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option watchOption = Option.builder().longOpt("watch")
+            .desc("watch directory and validate case files as they are dropped or modified (runs till stopped)\n(files already in directory are validated first)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option daemonOption = Option.builder().longOpt("daemon")
+            .desc("start resident validator listening on a given Unix domain socket (runs till stopped)\n(Java version 16 (or higher) is required)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
+    private static Option connectOption = Option.builder().longOpt("connect")
+            .desc("validate case files (-f) by resident validator listening on a given Unix domain socket\n(Java version 16 (or higher) is required)")
+            .required(false).hasArg(true).numberOfArgs(1).build();
+
     private static Options options = new Options()
                 .addOption(fileOption)
+                .addOption(filesFromOption)
+                .addOption(stdinDocumentsOption)
+                .addOption(shardOption)
+                .addOption(watchOption)
+                .addOption(inboxOption)
+                .addOption(acceptedOption)
+                .addOption(rejectedOption)
+                .addOption(daemonOption)
+                .addOption(connectOption)
                 .addOption(parserOption)
+                .addOption(manifestOption)
+                .addOption(cacheOption)
+                .addOption(formatOption)
+                .addOption(summaryOption)
+                .addOption(outputOption)
+                .addOption(threadsOption)
+                .addOption(outputOrderOption)
+                .addOption(strictImagesOption)
                 .addOption(checkVersionOption)
                 .addOption(deleteConfigFileOption)
                 .addOption(startGuiOption)
                 .addOption(webPortOption)
+                .addOption(virtualThreadsOption)
+                .addOption(webQueueOption)
                 .addOption(helpOption);
 
     static List<String> parseValidatorIds(String[] validatorGlobs) {
@@ -73,6 +185,74 @@ public class CaseFileValidator extends BaseCaseFileValidator {
         return validatorIds;
     }
 
+    static int parseThreads(String threadsOption) {
+        int threads;
+        try {
+            threads = Integer.parseInt(StringUtils.trim(threadsOption));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("threads must be a number: %s", threadsOption));
+        }
+        if (threads < 0) throw new IllegalArgumentException(String.format("threads must be 0 or positive: %s", threadsOption));
+        return (threads == 0) ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    static int parseQueueSize(String queueSizeOption) {
+        int queueSize;
+        try {
+            queueSize = Integer.parseInt(StringUtils.trim(queueSizeOption));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("queue size must be a number: %s", queueSizeOption));
+        }
+        if (queueSize < 0) throw new IllegalArgumentException(String.format("queue size must be 0 or positive: %s", queueSizeOption));
+        return queueSize;
+    }
+
+    static CaseFileBatchValidator.OutputOrder parseOutputOrder(String outputOrderOption) {
+        try {
+            return CaseFileBatchValidator.OutputOrder.valueOf(StringUtils.upperCase(StringUtils.trim(outputOrderOption)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("output order must be submission or completion: %s", outputOrderOption));
+        }
+    }
+
+    static ValidationResultWriter.Format parseFormat(String formatOption) {
+        try {
+            return ValidationResultWriter.Format.valueOf(StringUtils.upperCase(StringUtils.trim(formatOption)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("format must be text, jsonl or csv: %s", formatOption));
+        }
+    }
+
+    // output file, or standard output (which is not closed with results)
+    private static Writer createOutputWriter(CommandLine line) throws IOException {
+        return (line.hasOption(outputOption)) ?
+                java.nio.file.Files.newBufferedWriter(new File(line.getOptionValue(outputOption)).toPath(), StandardCharsets.UTF_8) :
+                CloseShieldWriter.wrap(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    }
+
+    // file list, or standard input ('-')
+    private static Reader createFileListReader(String filesFrom) throws IOException {
+        return ("-".equals(filesFrom)) ?
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                java.nio.file.Files.newBufferedReader(new File(filesFrom).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static Consumer<ValidationResult> writeTo(ValidationResultWriter resultWriter) {
+        return writeTo(resultWriter, null);
+    }
+
+    // summary (optional) counts every written result
+    private static Consumer<ValidationResult> writeTo(ValidationResultWriter resultWriter, ValidationSummary validationSummary) {
+        return validationResult -> {
+            try {
+                resultWriter.write(validationResult);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            if (validationSummary != null) validationSummary.add(validationResult);
+        };
+    }
+
     private static String globToRegex(String glob) {
         StringBuilder regex = new StringBuilder("^");
         for (Character character: Lists.charactersOf(glob)) {
@@ -128,8 +308,42 @@ public class CaseFileValidator extends BaseCaseFileValidator {
         CaseFileValidatorApplication.main(args);
     }
 
-    private static void startWebServer(int webServerPort) throws Exception {
-        CaseFileValidatorWebServer.start(webServerPort);
+    private static void startWebServer(int webServerPort, boolean virtualThreadsFlag) throws Exception {
+        CaseFileValidatorWebServer.start(webServerPort, virtualThreadsFlag);
+    }
+
+    // daemon classes are not loaded by older Java
+    private static void checkUnixDomainSocketSupported() {
+        String jvmVersion = StringUtils.defaultString(System.getProperty("java.version"), "N/A");
+        if (
+                (jvmVersion.startsWith("1."))||
+                (jvmVersion.matches("^(9|1[0-5])([.\\-+].*)?$"))
+        ) {
+            String errorMessage =
+                    "To use Unix domain socket, Java version 16 (or higher) is required.\n" +
+                    "Newer Java can be downloaded from https://www.java.com/";
+
+            System.out.println(errorMessage);
+            System.exit(1);
+        }
+    }
+
+    private static void startDaemon(Path socketPath, CaseFileBatchValidator batchValidator) throws IOException {
+        checkUnixDomainSocketSupported();
+
+        CaseFileValidatorDaemon daemon = new CaseFileValidatorDaemon(socketPath, batchValidator);
+
+        // socket file is removed when stopped (e.g. Ctrl-C)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException exception) {
+                //stopping anyway
+            }
+        }));
+
+        System.out.println(NAME_AND_VERSION);
+        daemon.start();
     }
 
     public static void main(String[] args) {
@@ -157,6 +371,10 @@ public class CaseFileValidator extends BaseCaseFileValidator {
                 System.exit(0);
             }
 
+            if (line.hasOption(strictImagesOption)) {
+                ImageProbe.strictModeFlag = true;
+            }
+
             // filter allowed validators
             List<BaseCaseFileValidator> validators;
             if (line.hasOption(parserOption)) {
@@ -170,45 +388,144 @@ public class CaseFileValidator extends BaseCaseFileValidator {
             boolean startGuiFlag = (line.hasOption(startGuiOption));
             boolean startWebServerFlag = (line.hasOption(webPortOption));
 
-            // load files
+            // one run over given files (or inbox) rarely sees the same content twice, hashing it for cache would only add a read of each file
+            // long-lived modes (GUI, web server, daemon, watch) cache results in memory, --cache also on disk
+            boolean singleRunFlag =
+                    (!startWebServerFlag)&&
+                    (!startGuiFlag)&&
+                    (!line.hasOption(daemonOption))&&
+                    (!line.hasOption(watchOption))&&
+                    (
+                            (line.hasOption(inboxOption))||
+                            (line.hasOption(fileOption))||
+                            (line.hasOption(filesFromOption))||
+                            (line.hasOption(stdinDocumentsOption))
+                    );
+            if ((line.hasOption(cacheOption)) || (!singleRunFlag))
+                resultCache = new ValidationResultCache((line.hasOption(cacheOption)) ? new File(line.getOptionValue(cacheOption)) : null);
+
+            // resident validator
             if (
                     (!startWebServerFlag)&&
                     (!startGuiFlag)&&
-                    (line.hasOption(fileOption))
+                    (line.hasOption(daemonOption))
+            ) {
+                int threads = parseThreads(line.getOptionValue(threadsOption, "1"));
+
+                try (ValidationManifest validationManifest = (line.hasOption(manifestOption)) ? new ValidationManifest(new File(line.getOptionValue(manifestOption)), validators) : null) {
+                    CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, threads, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+                    batchValidator.setValidationManifest(validationManifest);
+                    startDaemon(Paths.get(line.getOptionValue(daemonOption)), batchValidator);
+                }
+
+            // sort inbox
+            } else if (
+                    (!startWebServerFlag)&&
+                    (!startGuiFlag)&&
+                    (line.hasOption(inboxOption))
+            ) {
+                if ((!line.hasOption(acceptedOption)) || (!line.hasOption(rejectedOption)))
+                    throw new IllegalArgumentException("--inbox requires --accepted and --rejected directories");
+
+                int threads = parseThreads(line.getOptionValue(threadsOption, "1"));
+                ValidationResultWriter.Format format = parseFormat(line.getOptionValue(formatOption, "text"));
+                ValidationSummary validationSummary = (line.hasOption(summaryOption)) ? new ValidationSummary() : null;
+
+                // each case file is moved as soon as its result is ready
+                int failures;
+                try (ValidationResultWriter resultWriter = new ValidationResultWriter(format, createOutputWriter(line))) {
+                    CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, threads, CaseFileBatchValidator.OutputOrder.COMPLETION);
+                    CaseFileInbox caseFileInbox = new CaseFileInbox(
+                            new File(line.getOptionValue(inboxOption)),
+                            new File(line.getOptionValue(acceptedOption)),
+                            new File(line.getOptionValue(rejectedOption)),
+                            batchValidator,
+                            format);
+                    failures = caseFileInbox.process(writeTo(resultWriter, validationSummary));
+                }
+
+                PrintStream messageStream = (format == ValidationResultWriter.Format.TEXT) ? System.out : System.err;
+                if (validationSummary != null) messageStream.println(validationSummary);
+                System.exit((failures > 0) ? 1 : 0);
+
+            // watch directory
+            } else if (
+                    (!startWebServerFlag)&&
+                    (!startGuiFlag)&&
+                    (line.hasOption(watchOption))
+            ) {
+                int threads = parseThreads(line.getOptionValue(threadsOption, "1"));
+                ValidationResultWriter.Format format = parseFormat(line.getOptionValue(formatOption, "text"));
+
+                try (
+                        ValidationResultWriter resultWriter = new ValidationResultWriter(format, createOutputWriter(line));
+                        ValidationManifest validationManifest = (line.hasOption(manifestOption)) ? new ValidationManifest(new File(line.getOptionValue(manifestOption)), validators) : null
+                ) {
+                    CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, threads, CaseFileBatchValidator.OutputOrder.COMPLETION);
+                    batchValidator.setValidationManifest(validationManifest);
+                    new CaseFileWatcher(new File(line.getOptionValue(watchOption)), batchValidator, threads, writeTo(resultWriter)).watch();
+                }
+
+            // load files
+            } else if (
+                    (!startWebServerFlag)&&
+                    (!startGuiFlag)&&
+                    (
+                            (line.hasOption(fileOption))||
+                            (line.hasOption(filesFromOption))||
+                            (line.hasOption(stdinDocumentsOption))
+                    )
             ) {
-                CaseFileValidator parentValidator = new CaseFileValidator();
-                String[] caseFileOptions = line.getOptionValues(fileOption);
-
-                //TODO check if filename is glob (i.e. has wild-chars) and search for all matching files via regex
-                //TODO check if file is directory and collapse all files within
-                List<File> caseFiles = Arrays.stream(caseFileOptions).map(filePath -> new File(filePath)).collect(Collectors.toList());
-
-                List<ValidationResult> validationResults = caseFiles.stream().map(caseFile -> {
-                    ValidationResult validationResult;
-                    try (FileInputStream inputStream = new FileInputStream(caseFile)) {
-                        // read whole file
-                        //TODO load first 10MB for isApplicable (in case if we have 5GB video file...)
-                        byte[] bytes = IOUtils.toByteArray(inputStream);
-
-                        // validate with allowed validators
-
-                        //TODO use input stream, not bytes
-                        validationResult = parentValidator.validate(bytes, validators);
-                    } catch (Exception exception) {
-                        // create error object, e.g. file not found, cannot read, etc.
-                        validationResult = new ValidationResult();
-                        validationResult.addError(exception.getMessage());
+                if ((line.hasOption(stdinDocumentsOption)) && ("-".equals(line.getOptionValue(filesFromOption))))
+                    throw new IllegalArgumentException("--files-from - and --stdin-documents cannot be used together (both read standard input)");
+
+                // names are read lazily, so file lists of any length are supported
+                Iterator<String> caseFileNames = Iterators.concat(
+                        (line.hasOption(fileOption)) ? Arrays.asList(line.getOptionValues(fileOption)).iterator() : Collections.emptyIterator(),
+                        (line.hasOption(filesFromOption)) ? CaseFileWalker.readFileList(createFileListReader(line.getOptionValue(filesFromOption))) : Collections.emptyIterator()
+                );
+
+                int threads = parseThreads(line.getOptionValue(threadsOption, "1"));
+                CaseFileBatchValidator.OutputOrder outputOrder = parseOutputOrder(line.getOptionValue(outputOrderOption, "submission"));
+
+                ValidationResultWriter.Format format = parseFormat(line.getOptionValue(formatOption, "text"));
+
+                // results are written as soon as they are available (in selected order), not collected
+                ValidationSummary validationSummary = (line.hasOption(summaryOption)) ? new ValidationSummary() : null;
+                int failures;
+                if (line.hasOption(connectOption)) {
+                    // validated by daemon, its parsers, threads and manifest are used
+                    if ((line.hasOption(stdinDocumentsOption)) || (line.hasOption(shardOption)))
+                        throw new IllegalArgumentException("--stdin-documents and --shard cannot be used with --connect");
+
+                    checkUnixDomainSocketSupported();
+                    try (ValidationResultWriter resultWriter = new ValidationResultWriter(format, createOutputWriter(line))) {
+                        failures = CaseFileValidatorClient.validate(Paths.get(line.getOptionValue(connectOption)), caseFileNames, writeTo(resultWriter, validationSummary));
                     }
-                    validationResult.setFileName(caseFile.getPath());
-                    return validationResult;
-                }).collect(Collectors.toList());
+                } else try (
+                        ValidationResultWriter resultWriter = new ValidationResultWriter(format, createOutputWriter(line));
+                        ValidationManifest validationManifest = (line.hasOption(manifestOption)) ? new ValidationManifest(new File(line.getOptionValue(manifestOption)), validators) : null
+                ) {
+                    CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, threads, outputOrder);
+                    batchValidator.setValidationManifest(validationManifest);
+
+                    // globs and directories are expanded lazily, validation starts as soon as first files are found
+                    // archives (zip, tar, tar.gz, gz) are replaced by their entries, read without extraction to disk
+                    // with shard, other case files are skipped before they are read (archive is assigned as a whole)
+                    CaseFileShard caseFileShard = (line.hasOption(shardOption)) ? CaseFileShard.parse(line.getOptionValue(shardOption)) : null;
+                    Iterator<CaseFileSource> caseFiles = CaseFileArchive.expand(CaseFileWalker.expand(caseFileNames, caseFileShard));
+                    if (line.hasOption(stdinDocumentsOption))
+                        caseFiles = Iterators.concat(caseFiles, new CaseFileDocumentSplitter(System.in, "stdin"));
+
+                    failures = batchValidator.validate(caseFiles, writeTo(resultWriter, validationSummary));
+                }
 
-                validationResults.forEach(validationResult -> {
-                    System.out.println(validationResult);
-                });
+                // machine-readable output (on stdout) is not mixed with messages
+                PrintStream messageStream = (format == ValidationResultWriter.Format.TEXT) ? System.out : System.err;
+                if (validationSummary != null) messageStream.println(validationSummary);
 
-                if (validationResults.stream().anyMatch(validationResult -> validationResult.isFailure())) {
-                    System.out.println("There are validation failures!");
+                if (failures > 0) {
+                    messageStream.println("There are validation failures!");
                     System.exit(1);
                 } else {
                     System.exit(0);
@@ -226,7 +543,10 @@ public class CaseFileValidator extends BaseCaseFileValidator {
                     System.exit(1);
                 }
 
-                startWebServer(webServerPort);
+                CaseFileValidatorWebServer.validationThreads = parseThreads(line.getOptionValue(threadsOption, "0"));
+                CaseFileValidatorWebServer.validationQueueSize = parseQueueSize(line.getOptionValue(webQueueOption, String.valueOf(CaseFileValidatorHandler.DEFAULT_VALIDATION_QUEUE_SIZE)));
+
+                startWebServer(webServerPort, line.hasOption(virtualThreadsOption));
             } else {
                 // no file option, start gui
                 startGui(args);
@@ -239,17 +559,24 @@ public class CaseFileValidator extends BaseCaseFileValidator {
     }
 
     @Override
-    public boolean isApplicable(byte[] bytes) {
+    public boolean isApplicable(CaseFileFormat caseFileFormat) {
+        // load validators
+        List<BaseCaseFileValidator> validators  = BaseCaseFileValidator.getValidators();
+        return !findApplicableCaseFileValidators(caseFileFormat, validators).isEmpty();
+    }
+
+    @Override
+    public ValidationResult validate(byte[] bytes, CaseFileFormat caseFileFormat) {
         // load validators
         List<BaseCaseFileValidator> validators  = BaseCaseFileValidator.getValidators();
-        return !findApplicableCaseFileValidators(bytes, validators).isEmpty();
+        return validate(bytes, caseFileFormat, validators);
     }
 
     @Override
-    public ValidationResult validate(byte[] bytes) {
+    public ValidationResult validate(ByteSource byteSource, CaseFileFormat caseFileFormat) {
         // load validators
         List<BaseCaseFileValidator> validators  = BaseCaseFileValidator.getValidators();
-        return validate(bytes, validators);
+        return validate(byteSource, caseFileFormat, validators);
     }
 
     @Override
@@ -267,17 +594,77 @@ public class CaseFileValidator extends BaseCaseFileValidator {
         return null;
     }
 
-    private List<BaseCaseFileValidator> findApplicableCaseFileValidators(byte[] bytes, List<BaseCaseFileValidator> validators) {
+    private List<BaseCaseFileValidator> findApplicableCaseFileValidators(CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators) {
         return validators.stream()
-                .filter(validator -> validator.isApplicable(bytes))
+                .filter(validator -> validator.isApplicable(caseFileFormat))
                 .collect(Collectors.toList());
     }
 
     public ValidationResult validate(byte[] bytes, List<BaseCaseFileValidator> validators) {
+        return validate(bytes, CaseFileFormat.detect(bytes), validators);
+    }
+
+    // validators get the array itself (ByteSource.wrap(bytes).read() would copy whole case file)
+    public ValidationResult validate(byte[] bytes, CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators) {
+        return validate(() -> ValidationResultCache.hash(bytes), caseFileFormat, validators, validator -> validator.validate(bytes, caseFileFormat));
+    }
+
+    // content hash is already known (e.g. web server uses it as ETag)
+    public ValidationResult validate(byte[] bytes, String contentHash, CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators) {
+        return validate(() -> contentHash, caseFileFormat, validators, validator -> validator.validate(bytes, caseFileFormat));
+    }
+
+    public ValidationResult validate(ByteSource byteSource, List<BaseCaseFileValidator> validators) {
+        try {
+            return validate(byteSource, CaseFileFormat.detect(byteSource), validators);
+        } catch (IOException exception) {
+            ValidationResult validationResult  = new ValidationResult();
+            validationResult.addError(exception.getMessage());
+            return validationResult;
+        }
+    }
+
+    // the most expensive of applicable validators (they may be tried one after another), at least case file size
+    public long estimateMemoryCost(long size, CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators) {
+        return findApplicableCaseFileValidators(caseFileFormat, validators).stream()
+                .mapToLong(validator -> validator.estimateMemoryCost(size))
+                .reduce(size, Math::max);
+    }
+
+    // before case file is read (its format is not known yet): the most expensive of all validators, at least case file size
+    public long estimateMemoryCost(long size, List<BaseCaseFileValidator> validators) {
+        return validators.stream()
+                .mapToLong(validator -> validator.estimateMemoryCost(size))
+                .reduce(size, Math::max);
+    }
+
+    // case file format is detected once and shared by all validators
+    public ValidationResult validate(ByteSource byteSource, CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators) {
+        return validate(() -> byteSource.hash(Hashing.sha256()).toString(), caseFileFormat, validators, validator -> validator.validate(byteSource, caseFileFormat));
+    }
+
+    private interface ValidatorCall {
+        ValidationResult validate(BaseCaseFileValidator validator) throws IOException;
+    }
+
+    // content is hashed only when result cache is used
+    private ValidationResult validate(IOSupplier<String> contentHashSupplier, CaseFileFormat caseFileFormat, List<BaseCaseFileValidator> validators, ValidatorCall validatorCall) {
+        ValidationResultCache validationResultCache = resultCache;
+        String contentHash = null;
+        if (validationResultCache != null) {
+            try {
+                contentHash = contentHashSupplier.get();
+                Optional<ValidationResult> optionalValidationResult = validationResultCache.lookup(contentHash, validators);
+                if (optionalValidationResult.isPresent()) return optionalValidationResult.get();
+            } catch (IOException exception) {
+                //cannot be read, error is reported by validation
+            }
+        }
+
         ValidationResult validationResult = null;
         try {
 
-            List<BaseCaseFileValidator> applicableValidators = findApplicableCaseFileValidators(bytes, validators);
+            List<BaseCaseFileValidator> applicableValidators = findApplicableCaseFileValidators(caseFileFormat, validators);
 
             if (applicableValidators.isEmpty()) {
                 validationResult  = new ValidationResult();
@@ -288,7 +675,7 @@ public class CaseFileValidator extends BaseCaseFileValidator {
                 // try all applicable validators, till one gives success
                 // we have a few V4 validators and we cannot know which version is correct to use
                 for (BaseCaseFileValidator validator : applicableValidators) {
-                    ValidationResult validationResultTmp = validator.validate(bytes);
+                    ValidationResult validationResultTmp = validatorCall.validate(validator);
 
                     if (firstValidationResult == null) firstValidationResult = validationResultTmp;
 
@@ -302,6 +689,9 @@ public class CaseFileValidator extends BaseCaseFileValidator {
                 if (validationResult == null) validationResult = firstValidationResult;
             }
 
+            // read errors (exceptions) are not cached, they are reported again next time
+            if (contentHash != null) validationResultCache.put(contentHash, validators, validationResult);
+
         } catch (Exception exception) {
             validationResult  = new ValidationResult();
             validationResult.addError(exception.getMessage());
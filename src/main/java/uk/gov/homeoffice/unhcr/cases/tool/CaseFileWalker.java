@@ -0,0 +1,204 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+// expands case file arguments (files, directories and globs, e.g. 'inbox/**/*.xml') into case files
+// directories are walked lazily (one DirectoryStream per level), so files are returned as soon as they are found
+public class CaseFileWalker {
+
+    final static private String GLOB_CHARACTERS = "*?[{";
+
+    public static Iterator<File> expand(List<String> arguments) {
+        return expand(arguments.iterator());
+    }
+
+    public static Iterator<File> expand(Iterator<String> arguments) {
+        return expand(arguments, null);
+    }
+
+    // only files accepted by filter (e.g. CaseFileShard) are returned, filter gets path relative to argument
+    // (directory, or glob's base directory), so it does not depend on where directory is mounted
+    public static Iterator<File> expand(Iterator<String> arguments, Predicate<String> relativePathFilter) {
+        return Iterators.concat(Iterators.transform(arguments, argument -> expand(argument, relativePathFilter)));
+    }
+
+    public static Iterator<File> expand(String argument) {
+        return expand(argument, null);
+    }
+
+    private static Iterator<File> expand(String argument, Predicate<String> relativePathFilter) {
+        if (isGlob(argument)) {
+            // walk from the last directory before first glob character
+            int globIndex = StringUtils.indexOfAny(argument, GLOB_CHARACTERS);
+            int separatorIndex = Math.max(argument.lastIndexOf('/', globIndex), argument.lastIndexOf(File.separatorChar, globIndex));
+
+            String baseDirectory = (separatorIndex < 0) ? "" : argument.substring(0, Math.max(separatorIndex, 1));
+            String pattern = argument.substring(separatorIndex + 1);
+
+            // without '**' pattern cannot match deeper than its number of path segments
+            int maxDepth = (pattern.contains("**")) ? Integer.MAX_VALUE : StringUtils.countMatches(pattern, '/') + 1;
+            if (File.separatorChar != '/') maxDepth += StringUtils.countMatches(pattern, File.separatorChar);
+
+            // '**/' matches zero directories too (as in shells), e.g. '**/*.xml' matches 'case.xml'
+            PathMatcher globMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            PathMatcher zeroDirectoriesMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.replace("**/", ""));
+            PathMatcher pathMatcher = path -> (globMatcher.matches(path)) || (zeroDirectoriesMatcher.matches(path));
+            return filter(new DirectoryWalker(Paths.get(baseDirectory), pathMatcher, maxDepth), Paths.get(baseDirectory), relativePathFilter);
+        }
+
+        File file = new File(argument);
+        if (file.isDirectory()) {
+            // all files within (as GUI does for dropped directories)
+            return filter(new DirectoryWalker(file.toPath(), null, Integer.MAX_VALUE), file.toPath(), relativePathFilter);
+        }
+
+        // missing files are returned too, they are reported as validation errors
+        if ((relativePathFilter != null) && (!relativePathFilter.test(argument.replace(File.separatorChar, '/')))) return Collections.emptyIterator();
+        return Iterators.singletonIterator(file);
+    }
+
+    private static Iterator<File> filter(Iterator<File> files, Path baseDirectory, Predicate<String> relativePathFilter) {
+        if (relativePathFilter == null) return files;
+        return Iterators.filter(files, file -> relativePathFilter.test(baseDirectory.relativize(file.toPath()).toString().replace(File.separatorChar, '/')));
+    }
+
+    // reads list of case files (e.g. 'find -print0' output) lazily, one name at a time
+    // names are NUL-delimited when first delimiter is NUL (names can contain new lines then), otherwise new-line-delimited
+    public static Iterator<String> readFileList(Reader reader) {
+        return new AbstractIterator<String>() {
+
+            private int delimiter = -1;
+
+            @Override
+            protected String computeNext() {
+                try {
+                    StringBuilder name = new StringBuilder();
+                    int character;
+                    while ((character = reader.read()) != -1) {
+                        if ((delimiter == -1) && ((character == '\0') || (character == '\n'))) delimiter = character;
+
+                        if (character == delimiter) {
+                            // empty lines are skipped
+                            if (name.length() > 0) return name.toString();
+                        } else if ((character != '\r') || (delimiter == '\0')) {
+                            name.append((char) character);
+                        }
+                    }
+                    return (name.length() > 0) ? name.toString() : endOfData();
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }
+        };
+    }
+
+    public static boolean isGlob(String argument) {
+        return StringUtils.containsAny(argument, GLOB_CHARACTERS);
+    }
+
+    private static class DirectoryLevel {
+
+        final private Path directory;
+
+        final private Path relativeDirectory;
+
+        final private int depth;
+
+        final private DirectoryStream<Path> directoryStream;
+
+        final private Iterator<Path> iterator;
+
+        DirectoryLevel(Path directory, Path relativeDirectory, int depth) throws IOException {
+            this.directory = directory;
+            this.relativeDirectory = relativeDirectory;
+            this.depth = depth;
+            this.directoryStream = Files.newDirectoryStream(directory);
+            this.iterator = directoryStream.iterator();
+        }
+    }
+
+    private static class DirectoryWalker extends AbstractIterator<File> {
+
+        final private Path rootDirectory;
+
+        // matched against path relative to root directory (null - all files)
+        final private PathMatcher pathMatcher;
+
+        final private int maxDepth;
+
+        final private Deque<DirectoryLevel> levels = new ArrayDeque<>();
+
+        private boolean started = false;
+
+        DirectoryWalker(Path rootDirectory, PathMatcher pathMatcher, int maxDepth) {
+            this.rootDirectory = rootDirectory;
+            this.pathMatcher = pathMatcher;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        protected File computeNext() {
+            if (!started) {
+                started = true;
+                if (!openDirectory(rootDirectory, null, 1)) return rootDirectory.toFile();
+            }
+
+            while (!levels.isEmpty()) {
+                DirectoryLevel level = levels.peek();
+
+                Path path;
+                try {
+                    if (!level.iterator.hasNext()) {
+                        closeLevel();
+                        continue;
+                    }
+                    path = level.iterator.next();
+                } catch (DirectoryIteratorException exception) {
+                    // directory cannot be read, return it, so it is reported as validation error
+                    closeLevel();
+                    return level.directory.toFile();
+                }
+
+                Path relativePath = (level.relativeDirectory == null) ? path.getFileName() : level.relativeDirectory.resolve(path.getFileName());
+
+                // symbolic links to directories are not followed (no cycles)
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if ((level.depth < maxDepth) && (!openDirectory(path, relativePath, level.depth + 1)))
+                        return path.toFile();
+                } else if ((Files.isRegularFile(path)) && ((pathMatcher == null) || (pathMatcher.matches(relativePath)))) {
+                    return path.toFile();
+                }
+            }
+
+            return endOfData();
+        }
+
+        private boolean openDirectory(Path directory, Path relativeDirectory, int depth) {
+            try {
+                levels.push(new DirectoryLevel(directory, relativeDirectory, depth));
+                return true;
+            } catch (IOException exception) {
+                return false;
+            }
+        }
+
+        private void closeLevel() {
+            IOUtils.closeQuietly(levels.pop().directoryStream);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// resident mode: watches directory (and its sub-directories) and validates case files as they are dropped or modified
+// file is validated once it has not changed (events, size and modification time) for debounce period, so partially written files are skipped
+// validators (and reference data) stay warmed-up between files, results are passed to consumer as soon as they are ready
+public class CaseFileWatcher {
+
+    // quiet period after last change, before file is validated
+    static public long debounceMillis = 2000;
+
+    final private Path directory;
+
+    final private CaseFileBatchValidator batchValidator;
+
+    final private int threads;
+
+    final private Consumer<ValidationResult> resultConsumer;
+
+    // watched directories
+    final private Map<WatchKey, Path> watchKeys = new HashMap<>();
+
+    // changed files, waiting to settle
+    final private Map<Path, PendingFile> pendingFiles = new HashMap<>();
+
+    private volatile boolean stopFlag = false;
+
+    private static class PendingFile {
+        long lastChangeMillis;
+        long size;
+        long lastModified;
+    }
+
+    public CaseFileWatcher(File directory, CaseFileBatchValidator batchValidator, int threads, Consumer<ValidationResult> resultConsumer) {
+        if (!directory.isDirectory()) throw new IllegalArgumentException(String.format("not a directory: %s", directory));
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+
+        this.directory = directory.toPath();
+        this.batchValidator = batchValidator;
+        this.threads = threads;
+        this.resultConsumer = resultConsumer;
+    }
+
+    // blocks till stopped (or interrupted), files already in directory are validated first
+    public void watch() throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            register(watchService, directory);
+
+            long pollMillis = Math.max(debounceMillis / 4, 10);
+            while (!stopFlag) {
+                WatchKey watchKey = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                while (watchKey != null) {
+                    handleEvents(watchService, watchKey);
+                    watchKey = watchService.poll();
+                }
+
+                for (Path settledFile : takeSettledFiles()) {
+                    workers.execute(() -> validate(settledFile));
+                }
+            }
+        } finally {
+            // let running validations finish (and write their results)
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        stopFlag = true;
+    }
+
+    private void handleEvents(WatchService watchService, WatchKey watchKey) throws IOException {
+        Path watchedDirectory = watchKeys.get(watchKey);
+
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events lost, re-scan everything
+                for (Path path : new ArrayList<>(watchKeys.values())) register(watchService, path);
+                continue;
+            }
+            if ((watchedDirectory == null) || (event.kind() == ENTRY_DELETE)) continue;
+
+            Path path = watchedDirectory.resolve((Path) event.context());
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // files can be created before directory is registered, they are picked up by scan
+                if (event.kind() == ENTRY_CREATE) register(watchService, path);
+            } else {
+                markChanged(path);
+            }
+        }
+
+        if (!watchKey.reset()) watchKeys.remove(watchKey);
+    }
+
+    // registers directory and its sub-directories (symbolic links are not followed), existing files are marked as changed
+    private void register(WatchService watchService, Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                if (!watchKeys.containsValue(path))
+                    watchKeys.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) markChanged(path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException exception) {
+                // reported when validated
+                markChanged(path);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void markChanged(Path path) {
+        PendingFile pendingFile = pendingFiles.computeIfAbsent(path, key -> new PendingFile());
+        pendingFile.lastChangeMillis = System.currentTimeMillis();
+        pendingFile.size = path.toFile().length();
+        pendingFile.lastModified = path.toFile().lastModified();
+    }
+
+    // files without change (event, size or modification time) for debounce period
+    private List<Path> takeSettledFiles() {
+        List<Path> settledFiles = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<Path, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            PendingFile pendingFile = entry.getValue();
+            if (now - pendingFile.lastChangeMillis < debounceMillis) continue;
+
+            File file = entry.getKey().toFile();
+            if (!file.exists()) {
+                // deleted (or moved away) before settled
+                iterator.remove();
+            } else if ((file.length() != pendingFile.size) || (file.lastModified() != pendingFile.lastModified)) {
+                // still written, without events (e.g. network share)
+                markChanged(entry.getKey());
+            } else {
+                iterator.remove();
+                settledFiles.add(entry.getKey());
+            }
+        }
+
+        return settledFiles;
+    }
+
+    private void validate(Path path) {
+        try {
+            // archives are replaced by their entries
+            Iterator<CaseFileSource> caseFileSources = CaseFileArchive.expand(Collections.singletonList(path.toFile()).iterator());
+            while (caseFileSources.hasNext()) {
+                resultConsumer.accept(batchValidator.validate(caseFileSources.next()));
+            }
+        } catch (Exception exception) {
+            // worker must not stop on error, e.g. output cannot be written
+            System.err.println(String.format("Cannot validate %s: %s", path, exception.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// hashes (SHA-256) content as it is read by validators, hash of the first stream read to its end is kept
+// e.g. manifest records hash of content actually validated (file may change after its size and modification time were taken)
+// once known, the hash is shared by manifest and result cache, so content is hashed by one read only
+class HashingByteSource extends ByteSource {
+
+    final private ByteSource byteSource;
+
+    // null - content has not been read whole yet
+    private volatile String hash;
+
+    HashingByteSource(ByteSource byteSource) {
+        this.byteSource = byteSource;
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        InputStream inputStream = byteSource.openStream();
+        if (hash != null) return inputStream;
+
+        HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        return new FilterInputStream(hashingStream) {
+
+            private boolean endFlag = false;
+
+            @Override
+            public int read() throws IOException {
+                int result = super.read();
+                if (result == -1) end();
+                return result;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int result = super.read(b, off, len);
+                if (result == -1) end();
+                return result;
+            }
+
+            // skipped bytes are hashed too
+            @Override
+            public long skip(long n) throws IOException {
+                byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+                long skipped = 0;
+                while (skipped < n) {
+                    int result = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                    if (result == -1) break;
+                    skipped += result;
+                }
+                return skipped;
+            }
+
+            private void end() {
+                if (endFlag) return;
+                endFlag = true;
+                if (hash == null) hash = hashingStream.hash().toString();
+            }
+        };
+    }
+
+    // hash known already (e.g. by manifest lookup or result cache) is shared, content is not read again
+    @Override
+    public HashCode hash(HashFunction hashFunction) throws IOException {
+        if (!hashFunction.equals(Hashing.sha256())) return super.hash(hashFunction);
+        if (hash == null) {
+            try (InputStream inputStream = openStream()) {
+                ByteStreams.exhaust(inputStream);
+            }
+        }
+        return HashCode.fromString(hash);
+    }
+
+    @Override
+    public Optional<Long> sizeIfKnown() {
+        return byteSource.sizeIfKnown();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return byteSource.size();
+    }
+}
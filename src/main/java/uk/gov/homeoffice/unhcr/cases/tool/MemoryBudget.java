@@ -0,0 +1,77 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+import uk.gov.homeoffice.unhcr.exception.MemoryBudgetExceededException;
+
+// admission control for concurrent validations: estimated memory cost is reserved before case file is read
+// (see BaseCaseFileValidator.estimateMemoryCost), and released when validation finishes
+public class MemoryBudget {
+
+    // default budget is this fraction of max heap (the rest is left for caches, reference data, web server...)
+    static public double defaultHeapFraction = 0.5;
+
+    private static MemoryBudget defaultMemoryBudget;
+
+    final private long capacity;
+
+    private long available;
+
+    public MemoryBudget(long capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("memory budget must be positive");
+
+        this.capacity = capacity;
+        this.available = capacity;
+    }
+
+    // shared by CLI batch validator and web server
+    public static synchronized MemoryBudget getDefault() {
+        if (defaultMemoryBudget == null)
+            defaultMemoryBudget = new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * defaultHeapFraction));
+        return defaultMemoryBudget;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getAvailable() {
+        return available;
+    }
+
+    // waits till cost fits, cost over capacity is reduced to capacity (work then runs alone)
+    // returns reserved amount, which must be released
+    public long acquire(long cost) throws InterruptedException {
+        long reserved = Math.min(Math.max(cost, 0), capacity);
+        synchronized (this) {
+            while (available < reserved) wait();
+            available -= reserved;
+        }
+        return reserved;
+    }
+
+    // waits at most timeout, throws error (with clear message) when cost does not fit in time
+    // cost over capacity is reduced to capacity, as above (work then runs alone)
+    public long acquire(long cost, long timeoutMillis) throws InterruptedException {
+        long reserved = Math.min(Math.max(cost, 0), capacity);
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (available < reserved) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new MemoryBudgetExceededException(String.format(
+                            "Too many case files are validated at the moment (%s needed, %s available). Please try again later.",
+                            FileUtils.byteCountToDisplaySize(reserved),
+                            FileUtils.byteCountToDisplaySize(available)));
+                wait(remaining);
+            }
+            available -= reserved;
+        }
+        return reserved;
+    }
+
+    public synchronized void release(long reserved) {
+        available = Math.min(available + reserved, capacity);
+        notifyAll();
+    }
+}
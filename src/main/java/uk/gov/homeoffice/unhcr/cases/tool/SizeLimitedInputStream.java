@@ -0,0 +1,75 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// counts bytes read and fails as soon as more than limit bytes are read (e.g. chunked upload without content length)
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    final private long limit;
+
+    // formatted with display size of limit
+    final private String limitMessage;
+
+    private long count = 0;
+
+    private long mark = -1;
+
+    public SizeLimitedInputStream(InputStream inputStream, long limit) {
+        this(inputStream, limit, "Case file is too large. Limit %s");
+    }
+
+    public SizeLimitedInputStream(InputStream inputStream, long limit, String limitMessage) {
+        super(inputStream);
+        this.limit = limit;
+        this.limitMessage = limitMessage;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = in.read();
+        if (result != -1) count(1);
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = in.read(b, off, len);
+        if (result != -1) count(result);
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = in.skip(n);
+        count(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        in.mark(readlimit);
+        mark = count;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (!in.markSupported()) throw new IOException("Mark not supported");
+        if (mark == -1) throw new IOException("Mark not set");
+        in.reset();
+        count = mark;
+    }
+
+    private void count(long read) throws IOException {
+        count += read;
+        if (count > limit)
+            throw new IOException(String.format(limitMessage, FileUtils.byteCountToDisplaySize(limit)));
+    }
+}
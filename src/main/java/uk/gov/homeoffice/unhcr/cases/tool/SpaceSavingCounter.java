@@ -0,0 +1,87 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// approximate top-K counter (Space-Saving algorithm), memory is bounded by capacity however many distinct items are counted
+// when counter is full, the least counted item is replaced and new item inherits its count (recorded as possible overestimation)
+// items counted more than total/capacity times are always kept
+public class SpaceSavingCounter<T> {
+
+    public static class Count<T> {
+
+        final private T item;
+
+        private long count;
+
+        // upper bound of overestimation (count before item was tracked)
+        private long error;
+
+        private Count(T item) {
+            this.item = item;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        public boolean isExact() {
+            return error == 0;
+        }
+    }
+
+    final private int capacity;
+
+    final private Map<T, Count<T>> counts = new HashMap<>();
+
+    private long total = 0;
+
+    public SpaceSavingCounter(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(T item) {
+        total++;
+
+        Count<T> count = counts.get(item);
+        if (count == null) {
+            count = new Count<>(item);
+            if (counts.size() >= capacity) {
+                // replace the least counted item
+                Count<T> minimum = Collections.min(counts.values(), Comparator.comparingLong(Count::getCount));
+                counts.remove(minimum.item);
+                count.count = minimum.count;
+                count.error = minimum.count;
+            }
+            counts.put(item, count);
+        }
+        count.count++;
+    }
+
+    // the most counted items (descending), copied so that they do not change with later counts
+    public synchronized List<Count<T>> top(int limit) {
+        return counts.values().stream()
+                .sorted(Comparator.comparingLong((Count<T> count) -> count.count).reversed())
+                .limit(limit)
+                .map(count -> {
+                    Count<T> copy = new Count<>(count.item);
+                    copy.count = count.count;
+                    copy.error = count.error;
+                    return copy;
+                })
+                .collect(Collectors.toList());
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,184 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.io.function.IOSupplier;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// journal of validation results (one json per line, append-only), so later runs re-validate only new or changed case files
+// entry is replayed when fingerprint (tool version, validators, reference data and options, see ValidationResultCache.fingerprint)
+// and content (size and modification time, or hash) are the same
+// every result is flushed when written, so an interrupted run resumes where it stopped
+public class ValidationManifest implements Closeable {
+
+    final static private Gson gson = new Gson();
+
+    final private File manifestFile;
+
+    final private List<BaseCaseFileValidator> validators;
+
+    // the latest entry per case file
+    final private Map<String, ManifestEntry> entries = new HashMap<>();
+
+    final private Writer writer;
+
+    private static class ManifestEntry {
+        String path;
+        long size;
+        long lastModified;
+        String sha256;
+        String fingerprint;
+        String validatorId;
+        String validatorClass;
+        boolean success;
+        List<String> errors;
+        List<String> warnings;
+    }
+
+    public ValidationManifest(File manifestFile, List<BaseCaseFileValidator> validators) throws IOException {
+        this.manifestFile = manifestFile;
+        this.validators = validators;
+
+        truncateIncompleteLine();
+        int lines = load();
+
+        // journal has many outdated entries, rewrite it with the latest ones
+        if (lines > 2 * entries.size()) compact();
+
+        this.writer = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // interrupted run may leave incomplete last line, it is cut off (next entry would be appended to it otherwise)
+    private void truncateIncompleteLine() throws IOException {
+        if (!manifestFile.exists()) return;
+
+        try (RandomAccessFile file = new RandomAccessFile(manifestFile, "rw")) {
+            byte[] chunk = new byte[4096];
+            long end = file.length();
+            while (end > 0) {
+                int length = (int) Math.min(chunk.length, end);
+                file.seek(end - length);
+                file.readFully(chunk, 0, length);
+                for (int index = length - 1; index >= 0; index--) {
+                    if (chunk[index] == '\n') {
+                        long completeLength = end - length + index + 1;
+                        if (completeLength < file.length()) file.setLength(completeLength);
+                        return;
+                    }
+                }
+                end -= length;
+            }
+            // no complete line
+            file.setLength(0);
+        }
+    }
+
+    private int load() throws IOException {
+        if (!manifestFile.exists()) return 0;
+
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                try {
+                    ManifestEntry entry = gson.fromJson(line, ManifestEntry.class);
+                    if ((entry != null) && (entry.path != null)) entries.put(entry.path, entry);
+                } catch (JsonParseException e) {
+                    //incomplete line, written by interrupted run
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void compact() throws IOException {
+        File compactedFile = new File(manifestFile.getPath() + ".tmp");
+        try (Writer compactedWriter = Files.newBufferedWriter(compactedFile.toPath(), StandardCharsets.UTF_8)) {
+            for (ManifestEntry entry : entries.values()) {
+                compactedWriter.write(gson.toJson(entry));
+                compactedWriter.write('\n');
+            }
+        }
+        Files.move(compactedFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // returns result of earlier validation, when case file has not changed since
+    public Optional<ValidationResult> lookup(CaseFileSource caseFileSource) throws IOException {
+        return lookup(caseFileSource, () -> hash(caseFileSource));
+    }
+
+    // content is hashed by given supplier only when it is needed (e.g. hash shared with result cache, see HashingByteSource)
+    public synchronized Optional<ValidationResult> lookup(CaseFileSource caseFileSource, IOSupplier<String> contentHashSupplier) throws IOException {
+        ManifestEntry entry = entries.get(caseFileSource.getName());
+        if ((entry == null) || (entry.size != caseFileSource.getSize()) || (!ValidationResultCache.fingerprint(validators).equals(entry.fingerprint)))
+            return Optional.empty();
+
+        // file on disk not touched, content is not read
+        if ((caseFileSource.getLastModified() != 0) && (entry.lastModified == caseFileSource.getLastModified()))
+            return Optional.of(toValidationResult(entry));
+
+        // touched (or in-memory) content, compare hash
+        if (contentHashSupplier.get().equals(entry.sha256)) {
+            if (entry.lastModified != caseFileSource.getLastModified()) {
+                entry.lastModified = caseFileSource.getLastModified();
+                append(entry);
+            }
+            return Optional.of(toValidationResult(entry));
+        }
+
+        return Optional.empty();
+    }
+
+    // content hash is hash of content actually validated (see HashingByteSource), content is not read again
+    public void record(CaseFileSource caseFileSource, String contentHash, ValidationResult validationResult) throws IOException {
+        ManifestEntry entry = new ManifestEntry();
+        entry.path = caseFileSource.getName();
+        entry.size = caseFileSource.getSize();
+        entry.lastModified = caseFileSource.getLastModified();
+        entry.sha256 = contentHash;
+        entry.fingerprint = ValidationResultCache.fingerprint(validators);
+        entry.validatorId = validationResult.getValidatorId();
+        entry.validatorClass = validationResult.getValidatorClass();
+        entry.success = validationResult.isSuccess();
+        entry.errors = validationResult.getErrors();
+        entry.warnings = validationResult.getWarnings();
+
+        synchronized (this) {
+            entries.put(entry.path, entry);
+            append(entry);
+        }
+    }
+
+    private void append(ManifestEntry entry) throws IOException {
+        writer.write(gson.toJson(entry));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private static String hash(CaseFileSource caseFileSource) throws IOException {
+        return caseFileSource.getByteSource().hash(Hashing.sha256()).toString();
+    }
+
+    private static ValidationResult toValidationResult(ManifestEntry entry) {
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setFileName(entry.path);
+        validationResult.setValidator(entry.validatorId, entry.validatorClass);
+        if (entry.errors != null) entry.errors.forEach(validationResult::addError);
+        if (entry.warnings != null) entry.warnings.forEach(validationResult::addWarning);
+        return validationResult;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
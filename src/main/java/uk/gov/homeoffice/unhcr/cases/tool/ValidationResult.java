@@ -28,6 +28,10 @@ public class ValidationResult {
         return !isSuccess();
     }
 
+    public String getFileName() {
+        return fileName;
+    }
+
     public void setFileName(String fileName) {
         this.fileName = fileName;
     }
@@ -70,6 +74,12 @@ public class ValidationResult {
         this.validatorId = validator.getValidatorId();
     }
 
+    // for results restored from earlier runs (see ValidationManifest)
+    public void setValidator(String validatorId, String validatorClass) {
+        this.validatorId = validatorId;
+        this.validatorClass = validatorClass;
+    }
+
     public String getValidatorId() {
         return this.validatorId;
     }
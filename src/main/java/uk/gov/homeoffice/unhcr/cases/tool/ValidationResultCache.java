@@ -0,0 +1,238 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceDataContainer;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.ImageProbe;
+import uk.gov.homeoffice.unhcr.version.GitHubVersionChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// content-addressed cache of validation results, so identical case files (e.g. resubmitted by partner, re-validated in GUI) are not parsed again
+// key is SHA-256 of case file content, tool version, validator ids, reference data version and options changing results (e.g. strict images)
+// results are kept in memory (bounded by size and time) and, optionally, in directory on disk (one json file per key), which survives restarts
+public class ValidationResultCache {
+
+    // approximate memory used by cached results (errors and warnings)
+    static public long memorySizeLimit = 32 * 1024 * 1024;
+
+    // results older than this are not used (memory and disk)
+    static public long expiryMillis = TimeUnit.DAYS.toMillis(7);
+
+    // result files kept on disk, the oldest are deleted
+    static public int diskEntriesLimit = 100_000;
+
+    final static private Gson gson = new Gson();
+
+    final static private String toolVersion = GitHubVersionChecker.getCurrentVersion().toString();
+
+    final private Cache<String, CachedResult> memoryCache;
+
+    // null - memory only
+    final private Path cacheDirectory;
+
+    final private AtomicLong hits = new AtomicLong();
+
+    final private AtomicLong diskHits = new AtomicLong();
+
+    final private AtomicLong misses = new AtomicLong();
+
+    final private AtomicLong diskWrites = new AtomicLong();
+
+    private static class CachedResult {
+        String validatorId;
+        String validatorClass;
+        List<String> errors;
+        List<String> warnings;
+
+        int weight() {
+            return 64 + Stream.concat(errors.stream(), warnings.stream()).mapToInt(message -> 2 * message.length() + 40).sum();
+        }
+    }
+
+    public ValidationResultCache(File cacheDirectory) throws IOException {
+        this.memoryCache = CacheBuilder.newBuilder()
+                .maximumWeight(memorySizeLimit)
+                .weigher((String key, CachedResult cachedResult) -> cachedResult.weight())
+                .expireAfterWrite(expiryMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        if (cacheDirectory != null) {
+            this.cacheDirectory = cacheDirectory.toPath();
+            Files.createDirectories(this.cacheDirectory);
+        } else {
+            this.cacheDirectory = null;
+        }
+    }
+
+    public static String hash(byte[] bytes) {
+        return Hashing.sha256().hashBytes(bytes).toString();
+    }
+
+    // returns copy of cached result (without file name)
+    public Optional<ValidationResult> lookup(String contentHash, List<BaseCaseFileValidator> validators) {
+        String key = getKey(contentHash, validators);
+
+        CachedResult cachedResult = memoryCache.getIfPresent(key);
+        if (cachedResult == null) {
+            cachedResult = readFromDisk(key);
+            if (cachedResult != null) {
+                diskHits.incrementAndGet();
+                memoryCache.put(key, cachedResult);
+            }
+        }
+
+        if (cachedResult == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+        return Optional.of(toValidationResult(cachedResult));
+    }
+
+    public void put(String contentHash, List<BaseCaseFileValidator> validators, ValidationResult validationResult) {
+        CachedResult cachedResult = new CachedResult();
+        cachedResult.validatorId = validationResult.getValidatorId();
+        cachedResult.validatorClass = validationResult.getValidatorClass();
+        cachedResult.errors = new ArrayList<>(validationResult.getErrors());
+        cachedResult.warnings = new ArrayList<>(validationResult.getWarnings());
+
+        String key = getKey(contentHash, validators);
+        memoryCache.put(key, cachedResult);
+        writeToDisk(key, cachedResult);
+    }
+
+    private String getKey(String contentHash, List<BaseCaseFileValidator> validators) {
+        return Hashing.sha256().hashString(contentHash + "\n" + fingerprint(validators), StandardCharsets.UTF_8).toString();
+    }
+
+    // everything but content which changes validation result (the same for cache key and validation manifest)
+    static public String fingerprint(List<BaseCaseFileValidator> validators) {
+        String context = String.join("\n",
+                toolVersion,
+                validators.stream().map(BaseCaseFileValidator::getValidatorId).sorted().collect(Collectors.joining(" ")),
+                ReferenceDataContainer.getVersion(),
+                String.format("strictImages=%s showSuggestedValues=%s", ImageProbe.strictModeFlag, ReferenceData.showSuggestedValuesFlag)
+        );
+        return Hashing.sha256().hashString(context, StandardCharsets.UTF_8).toString();
+    }
+
+    private CachedResult readFromDisk(String key) {
+        if (cacheDirectory == null) return null;
+
+        Path cacheFile = cacheDirectory.resolve(key + ".json");
+        try {
+            if (Files.getLastModifiedTime(cacheFile).toMillis() < System.currentTimeMillis() - expiryMillis) {
+                Files.deleteIfExists(cacheFile);
+                return null;
+            }
+            try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                CachedResult cachedResult = gson.fromJson(reader, CachedResult.class);
+                if ((cachedResult == null) || (cachedResult.errors == null) || (cachedResult.warnings == null)) return null;
+                return cachedResult;
+            }
+        } catch (NoSuchFileException exception) {
+            return null;
+        } catch (IOException | JsonParseException exception) {
+            // e.g. file being replaced, result is validated again
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedResult cachedResult) {
+        if (cacheDirectory == null) return;
+
+        // readers never see partially written file
+        Path cacheFile = cacheDirectory.resolve(key + ".json");
+        Path temporaryFile = cacheDirectory.resolve(key + ".json." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                gson.toJson(cachedResult, writer);
+            }
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            // cache is optional, result is validated again next time
+            System.err.println(String.format("Cannot write result cache file %s: %s", cacheFile, exception.getMessage()));
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException ignored) {
+                //ignore
+            }
+            return;
+        }
+
+        // directory is listed only once in a while
+        if (diskWrites.incrementAndGet() % Math.max(diskEntriesLimit / 10, 1) == 0) pruneDisk();
+    }
+
+    // deletes expired files, and the oldest ones over limit
+    private synchronized void pruneDisk() {
+        long expiredMillis = System.currentTimeMillis() - expiryMillis;
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            List<Path> cacheFiles = files
+                    .filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(ValidationResultCache::getLastModifiedMillis).reversed())
+                    .collect(Collectors.toList());
+            for (int index = 0; index < cacheFiles.size(); index++) {
+                Path cacheFile = cacheFiles.get(index);
+                if ((index >= diskEntriesLimit) || (getLastModifiedMillis(cacheFile) < expiredMillis)) Files.deleteIfExists(cacheFile);
+            }
+        } catch (IOException exception) {
+            System.err.println(String.format("Cannot prune result cache %s: %s", cacheDirectory, exception.getMessage()));
+        }
+    }
+
+    private static long getLastModifiedMillis(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException exception) {
+            return 0;
+        }
+    }
+
+    private static ValidationResult toValidationResult(CachedResult cachedResult) {
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setValidator(cachedResult.validatorId, cachedResult.validatorClass);
+        cachedResult.errors.forEach(validationResult::addError);
+        cachedResult.warnings.forEach(validationResult::addWarning);
+        return validationResult;
+    }
+
+    // hits include disk hits
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getMemoryEntries() {
+        return memoryCache.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Result cache: %d hits (%d from disk), %d misses", getHits(), getDiskHits(), getMisses());
+    }
+}
@@ -0,0 +1,69 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import uk.gov.homeoffice.unhcr.cases.tool.webserver.response.ValidationResultResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// writes each validation result as soon as it is ready (and flushes it), so batch output can be consumed while validation runs
+// JSONL and CSV have the same fields as REST api response (see ValidationResultResponse) plus file name
+public class ValidationResultWriter implements Closeable {
+
+    public enum Format {
+        TEXT,
+        JSONL,
+        CSV
+    }
+
+    final static private String[] CSV_HEADER = { "fileName", "success", "validatorId", "errors", "warnings" };
+
+    // single line json, without html escaping
+    final static private Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    final private Format format;
+
+    final private Writer writer;
+
+    final private CSVPrinter csvPrinter;
+
+    public ValidationResultWriter(Format format, Writer writer) throws IOException {
+        this.format = format;
+        this.writer = writer;
+        this.csvPrinter = (format == Format.CSV) ? new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(CSV_HEADER).build()) : null;
+        if (csvPrinter != null) csvPrinter.flush();
+    }
+
+    public synchronized void write(ValidationResult validationResult) throws IOException {
+        switch (format) {
+            case TEXT:
+                writer.write(validationResult.toString());
+                writer.write(System.lineSeparator());
+                break;
+            case JSONL:
+                writer.write(gson.toJson(ValidationResultResponse.of(validationResult)));
+                writer.write('\n');
+                break;
+            case CSV:
+                // multiple errors (warnings) are in one (quoted) field, one per line
+                csvPrinter.printRecord(
+                        validationResult.getFileName(),
+                        validationResult.isSuccess(),
+                        validationResult.getValidatorId(),
+                        String.join("\n", validationResult.getErrors()),
+                        String.join("\n", validationResult.getWarnings())
+                );
+                break;
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,137 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// corpus-wide report of batch validation, results are counted (not kept), so memory does not grow with number of case files
+// errors are normalised to templates (individual ids, values and numbers removed), the most frequent are counted by Space-Saving counter
+public class ValidationSummary {
+
+    // number of error templates (and directories) tracked, more distinct ones make counts approximate
+    static public int summaryCapacity = 1000;
+
+    // number of error templates (and directories) reported
+    static public int summaryTopLimit = 20;
+
+    final static private Pattern ALLOWED_VALUES_PATTERN = Pattern.compile("\\s*\\[allowed values:.*$", Pattern.DOTALL);
+
+    final static private Pattern VALUE_PATTERN = Pattern.compile(": .*$", Pattern.DOTALL);
+
+    final static private Pattern INDIVIDUAL_PATTERN = Pattern.compile("((?:individual(?:\\(s\\)|s)?|Primary Applicants?) )'?[^\\s':,\\[][^\\s':,]*(?:,[^\\s':,]+)*'?");
+
+    final static private Pattern PATH_PATTERN = Pattern.compile("[^\\s'(]*[/\\\\][^\\s')]*");
+
+    final static private Pattern NUMBER_PATTERN = Pattern.compile("\\b\\d+\\b");
+
+    final private long startMillis = System.currentTimeMillis();
+
+    private long caseFiles = 0;
+
+    private long failedCaseFiles = 0;
+
+    private long errors = 0;
+
+    private long warnings = 0;
+
+    // validator id -> case files (and failed case files)
+    final private Map<String, long[]> validatorCounts = new TreeMap<>();
+
+    // number of case files with error
+    final private SpaceSavingCounter<String> errorTemplates = new SpaceSavingCounter<>(summaryCapacity);
+
+    // failed case files per directory (e.g. partner's drop folder) or archive
+    final private SpaceSavingCounter<String> failedDirectories = new SpaceSavingCounter<>(summaryCapacity);
+
+    public synchronized void add(ValidationResult validationResult) {
+        caseFiles++;
+        errors += validationResult.getErrors().size();
+        warnings += validationResult.getWarnings().size();
+
+        long[] validatorCount = validatorCounts.computeIfAbsent(StringUtils.defaultIfBlank(validationResult.getValidatorId(), "none"), key -> new long[2]);
+        validatorCount[0]++;
+
+        if (validationResult.isFailure()) {
+            failedCaseFiles++;
+            validatorCount[1]++;
+
+            // template is counted once per case file
+            validationResult.getErrors().stream().map(ValidationSummary::normalise).distinct().forEach(errorTemplates::add);
+
+            failedDirectories.add(getDirectory(validationResult.getFileName()));
+        }
+    }
+
+    // e.g. "Invalid value 'OccupationCode' value for individual 199-00265997: 999999  [allowed values: ...]"
+    // is normalised to "Invalid value 'OccupationCode' value for individual <id>: <value>"
+    public static String normalise(String error) {
+        String template = StringUtils.defaultString(error);
+        template = ALLOWED_VALUES_PATTERN.matcher(template).replaceFirst("");
+        template = VALUE_PATTERN.matcher(template).replaceFirst(": <value>");
+        template = INDIVIDUAL_PATTERN.matcher(template).replaceAll("$1<id>");
+        template = PATH_PATTERN.matcher(template).replaceAll("<path>");
+        template = NUMBER_PATTERN.matcher(template).replaceAll("<n>");
+        return template;
+    }
+
+    // archive entries are counted by archive, in-memory documents (e.g. stdin#1) by their source
+    private static String getDirectory(String fileName) {
+        if (StringUtils.isBlank(fileName)) return "-";
+        if (fileName.contains("!/")) return StringUtils.substringBefore(fileName, "!/");
+        if (fileName.contains("#")) return StringUtils.substringBefore(fileName, "#");
+        return StringUtils.defaultIfBlank(new File(fileName).getParent(), ".");
+    }
+
+    public synchronized long getCaseFiles() {
+        return caseFiles;
+    }
+
+    public synchronized long getFailedCaseFiles() {
+        return failedCaseFiles;
+    }
+
+    public List<SpaceSavingCounter.Count<String>> getTopErrorTemplates() {
+        return errorTemplates.top(summaryTopLimit);
+    }
+
+    public List<SpaceSavingCounter.Count<String>> getTopFailedDirectories() {
+        return failedDirectories.top(summaryTopLimit);
+    }
+
+    @Override
+    public synchronized String toString() {
+        double seconds = Math.max(System.currentTimeMillis() - startMillis, 1) / 1000.0;
+
+        StringBuilder result = new StringBuilder();
+        result.append("SUMMARY\n");
+        result.append(String.format("Case files: %d (passed %d, failed %d)\n", caseFiles, caseFiles - failedCaseFiles, failedCaseFiles));
+        result.append(String.format("Errors: %d, warnings: %d\n", errors, warnings));
+        result.append(String.format(Locale.ROOT, "Time: %.1f s (%.1f case files/s)\n", seconds, caseFiles / seconds));
+
+        // not used when validated by daemon (--connect)
+        ValidationResultCache resultCache = CaseFileValidator.resultCache;
+        if ((resultCache != null) && (resultCache.getHits() + resultCache.getMisses() > 0)) result.append(resultCache).append("\n");
+
+        result.append("VALIDATORS (case files, failed):\n");
+        validatorCounts.forEach((validatorId, validatorCount) -> result.append(String.format("%8d %8d  %s\n", validatorCount[0], validatorCount[1], validatorId)));
+
+        // '~' marks approximate counts (more distinct templates than summary capacity)
+        result.append("TOP ERRORS (failed case files):\n");
+        for (SpaceSavingCounter.Count<String> count : getTopErrorTemplates()) {
+            result.append(String.format("%8s  %s\n", format(count), count.getItem()));
+        }
+
+        result.append("TOP FAILED DIRECTORIES (failed case files):\n");
+        for (SpaceSavingCounter.Count<String> count : getTopFailedDirectories()) {
+            result.append(String.format("%8s  %s\n", format(count), count.getItem()));
+        }
+
+        return StringUtils.removeEnd(result.toString(), "\n");
+    }
+
+    private static String format(SpaceSavingCounter.Count<String> count) {
+        return (count.isExact() ? "" : "~") + count.getCount();
+    }
+}
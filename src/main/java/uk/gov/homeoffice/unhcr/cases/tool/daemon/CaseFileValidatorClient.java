@@ -0,0 +1,81 @@
+package uk.gov.homeoffice.unhcr.cases.tool.daemon;
+
+import com.google.common.base.Throwables;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+import uk.gov.homeoffice.unhcr.cases.tool.webserver.response.ValidationResultResponse;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+// thin client of CaseFileValidatorDaemon, forwards case file paths and passes results to consumer as they arrive
+public class CaseFileValidatorClient {
+
+    final static private Gson gson = new Gson();
+
+    // returns number of failed case files
+    static public int validate(Path socketPath, Iterator<String> caseFilePaths, Consumer<ValidationResult> resultConsumer) throws IOException {
+        try (SocketChannel socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            try {
+                socketChannel.connect(UnixDomainSocketAddress.of(socketPath));
+            } catch (IOException e) {
+                throw new IOException(String.format("Cannot connect to daemon on %s (%s)", socketPath, e.getMessage()), e);
+            }
+
+            // paths are sent (as they are read, e.g. from --files-from) while results arrive,
+            // daemon validates them as it reads them, so neither side waits on the other's full socket buffer
+            FutureTask<Void> sendTask = new FutureTask<>(() -> {
+                // daemon runs in other directory, so paths are absolute
+                Writer writer = new BufferedWriter(new OutputStreamWriter(SocketChannelStreams.newOutputStream(socketChannel), StandardCharsets.UTF_8));
+                while (caseFilePaths.hasNext()) {
+                    writer.write(new File(caseFilePaths.next()).getAbsolutePath());
+                    writer.write('\n');
+                    // e.g. paths read slowly from standard input are validated meanwhile
+                    writer.flush();
+                }
+                writer.write('\n');
+                writer.flush();
+                return null;
+            });
+            Thread sendThread = new Thread(sendTask, "daemon-client-send");
+            sendThread.setDaemon(true);
+            sendThread.start();
+
+            int failures = 0;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(SocketChannelStreams.newInputStream(socketChannel), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ValidationResult validationResult;
+                try {
+                    validationResult = gson.fromJson(line, ValidationResultResponse.class).toValidationResult();
+                } catch (JsonParseException e) {
+                    throw new IOException(String.format("Invalid response from daemon: %s", line), e);
+                }
+                if (validationResult.isFailure()) failures++;
+                resultConsumer.accept(validationResult);
+            }
+
+            // e.g. file list cannot be read
+            try {
+                sendTask.get();
+            } catch (ExecutionException exception) {
+                Throwables.throwIfInstanceOf(exception.getCause(), IOException.class);
+                Throwables.throwIfUnchecked(exception.getCause());
+                throw new IOException(exception.getCause());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while sending case file paths");
+            }
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package uk.gov.homeoffice.unhcr.cases.tool.daemon;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileArchive;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileBatchValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileWalker;
+import uk.gov.homeoffice.unhcr.cases.tool.webserver.response.ValidationResultResponse;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// resident validator, listens on Unix domain socket (Java version 16 (or higher) is required), so scripted checks do not pay JVM start-up, validators registration and reference data loading
+// protocol (see CaseFileValidatorClient):
+//  request - case file paths (absolute, directories, globs and archives are expanded), one per line, ended by empty line or end of stream
+//            (paths are validated as they are read, so results may arrive before request is complete)
+//  response - one json per case file (the same fields as REST api response, plus fileName), connection is closed after last
+public class CaseFileValidatorDaemon implements Closeable {
+
+    final static private Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    final private Path socketPath;
+
+    final private CaseFileBatchValidator batchValidator;
+
+    // connections are handled in parallel, validations share memory budget
+    final private ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+
+    private ServerSocketChannel serverSocketChannel;
+
+    public CaseFileValidatorDaemon(Path socketPath, CaseFileBatchValidator batchValidator) {
+        this.socketPath = socketPath;
+        this.batchValidator = batchValidator;
+    }
+
+    // blocks till closed
+    public void start() throws IOException {
+        synchronized (this) {
+            deleteStaleSocket();
+
+            serverSocketChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            bindPrivately();
+        }
+
+        System.out.println(String.format("Listening on %s", socketPath));
+
+        try {
+            while (true) {
+                SocketChannel socketChannel = serverSocketChannel.accept();
+                connectionExecutor.execute(() -> handle(socketChannel));
+            }
+        } catch (ClosedChannelException e) {
+            //closed
+        }
+    }
+
+    // daemon reads any file it is asked for, so only its owner can connect
+    // socket is bound in a new directory only owner can enter (socket file gets umask permissions at first),
+    // then restricted and moved into place, so no other user can connect in between
+    private void bindPrivately() throws IOException {
+        Path socketDirectory = socketPath.toAbsolutePath().getParent();
+        Path privateDirectory;
+        try {
+            privateDirectory = Files.createTempDirectory(socketDirectory, ".validator-", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            //not posix file system
+            serverSocketChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            return;
+        }
+
+        Path privateSocketPath = privateDirectory.resolve(socketPath.getFileName());
+        try {
+            serverSocketChannel.bind(UnixDomainSocketAddress.of(privateSocketPath));
+            Files.setPosixFilePermissions(privateSocketPath, PosixFilePermissions.fromString("rw-------"));
+            Files.move(privateSocketPath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(privateSocketPath);
+            Files.deleteIfExists(privateDirectory);
+        }
+    }
+
+    // socket file left by killed daemon is removed, running daemon is not replaced
+    private void deleteStaleSocket() throws IOException {
+        if (!Files.exists(socketPath)) return;
+
+        boolean runningFlag;
+        try (SocketChannel socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            runningFlag = socketChannel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            runningFlag = false;
+        }
+        if (runningFlag) throw new IOException(String.format("Daemon is already running on %s", socketPath));
+
+        Files.delete(socketPath);
+    }
+
+    private void handle(SocketChannel socketChannel) {
+        try (
+                SocketChannel channel = socketChannel;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(SocketChannelStreams.newInputStream(channel), StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(SocketChannelStreams.newOutputStream(channel), StandardCharsets.UTF_8))
+        ) {
+            // paths are read lazily, validation starts with the first one (client sends the rest meanwhile)
+            Iterator<String> caseFilePaths = new AbstractIterator<String>() {
+                @Override
+                protected String computeNext() {
+                    try {
+                        String line = reader.readLine();
+                        return ((line == null) || (line.isEmpty())) ? endOfData() : line;
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                }
+            };
+
+            // results are sent as soon as they are ready
+            batchValidator.validate(CaseFileArchive.expand(CaseFileWalker.expand(caseFilePaths)), validationResult -> {
+                try {
+                    writer.write(gson.toJson(ValidationResultResponse.of(validationResult)));
+                    writer.write('\n');
+                    writer.flush();
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (IOException | UncheckedIOException exception) {
+            //client disconnected
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        connectionExecutor.shutdownNow();
+        if (serverSocketChannel != null) {
+            serverSocketChannel.close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package uk.gov.homeoffice.unhcr.cases.tool.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// streams of (blocking) socket channel, which can be read and written by two threads at once
+// (streams of Channels.newInputStream/newOutputStream share channel's blocking lock, so read waiting for data blocks write)
+class SocketChannelStreams {
+
+    static InputStream newInputStream(SocketChannel socketChannel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] buffer = new byte[1];
+                return (read(buffer, 0, 1) == -1) ? -1 : (buffer[0] & 0xff);
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) return 0;
+                return socketChannel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+
+            @Override
+            public void close() throws IOException {
+                socketChannel.close();
+            }
+        };
+    }
+
+    static OutputStream newOutputStream(SocketChannel socketChannel) {
+        return new OutputStream() {
+            @Override
+            public void write(int character) throws IOException {
+                write(new byte[] {(byte) character}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) socketChannel.write(buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                socketChannel.close();
+            }
+        };
+    }
+}
@@ -4,32 +4,25 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.Unmarshaller;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.tuple.Pair;
-import org.xml.sax.InputSource;
-import org.xml.sax.XMLReader;
 import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
 import uk.gov.homeoffice.unhcr.cases.reference.ReferenceDataContainer;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileFormat;
 import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
 import uk.gov.homeoffice.unhcr.exception.ParseCaseFileException;
 
-import javax.imageio.ImageIO;
-import javax.xml.XMLConstants;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -37,8 +30,12 @@ import static uk.gov.homeoffice.unhcr.cases.reference.ReferenceDataContainer.*;
 
 public abstract class BaseCaseFileValidator {
 
+    final static public double DEFAULT_MEMORY_EXPANSION_FACTOR = 6.0;
+
     private static Multimap<String, BaseCaseFileValidator> caseFileValidatorsMap  = ArrayListMultimap.create();
 
+    final private ConcurrentMap<Class<?>, CaseFileParserCache<?>> parserCaches = new ConcurrentHashMap<>();
+
     static {
 
         //TODO use ClassGraph to dynamically load validators from class path
@@ -151,20 +148,45 @@ public abstract class BaseCaseFileValidator {
     }
 
     public ValidationResult validate(File file) throws IOException {
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            return validate(fileInputStream);
-        }
+        return validate(Files.asByteSource(file));
     }
 
+    public ValidationResult validate(ByteSource byteSource) throws IOException {
+        return validate(byteSource, CaseFileFormat.detect(byteSource));
+    }
 
-    abstract public boolean isApplicable(byte[] bytes);
+    // validators which can read case file incrementally override this
+    public ValidationResult validate(ByteSource byteSource, CaseFileFormat caseFileFormat) throws IOException {
+        return validate(byteSource.read(), caseFileFormat);
+    }
 
-    abstract public ValidationResult validate(byte[] bytes);
+    public ValidationResult validate(byte[] bytes) {
+        return validate(bytes, CaseFileFormat.detect(bytes));
+    }
+
+    public boolean isApplicable(byte[] bytes) {
+        return isApplicable(CaseFileFormat.detect(bytes));
+    }
+
+
+    abstract public boolean isApplicable(CaseFileFormat caseFileFormat);
+
+    abstract public ValidationResult validate(byte[] bytes, CaseFileFormat caseFileFormat);
 
     abstract public String getValidatorId();
 
     abstract protected String getResourcePathXSD();
 
+    // estimated peak memory used by validate(byte[]) relative to case file size (bytes, DOM photos, JAXB objects)
+    protected double getMemoryExpansionFactor() {
+        return DEFAULT_MEMORY_EXPANSION_FACTOR;
+    }
+
+    // estimated peak memory (in bytes, case file bytes included) needed to validate case file of a given size
+    public long estimateMemoryCost(long size) {
+        return (long) (size * getMemoryExpansionFactor());
+    }
+
 
     public BaseCaseFileValidator() {
         //self-test, it will throw RuntimeException when resource is missing
@@ -172,37 +194,32 @@ public abstract class BaseCaseFileValidator {
     }
 
     protected <T> T parseCaseFile(byte[] bytes, Class<T> clazz) throws ParseCaseFileException {
-        try (
-                ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                InputStream xsd = loadResourceXSDAsSteam();
-        ) {
-
-            JAXBContext context = JAXBContext.newInstance(clazz);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(new StreamSource(xsd));
-
-            SAXParserFactory sax = SAXParserFactory.newInstance();
-
-            sax.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-
-            sax.setValidating(true);
-            sax.setSchema(schema);
-
-            //this is to ignore <UNHCR_RRF xmlns="http://tempuri.org/ElectronicRRF.xsd">
-            sax.setNamespaceAware(false);
-
-            XMLReader reader = sax.newSAXParser().getXMLReader();
-            SAXSource source = new SAXSource(reader, new InputSource(bais));
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
+            return parseCaseFile(bais, clazz);
+        } catch (IOException e) {
+            throw new ParseCaseFileException(String.format("Cannot parse xml. Is is correct format? Error: %s", e.getMessage()), e);
+        }
+    }
 
-            Object unhcrrrf    = unmarshaller.unmarshal(source);
-            return (T) unhcrrrf;
+    protected <T> T parseCaseFile(InputStream inputStream, Class<T> clazz) throws ParseCaseFileException {
+        try {
+            return getParserCache(clazz).parse(inputStream);
         } catch (Exception e) {
             throw new ParseCaseFileException(String.format("Cannot parse xml. Is is correct format? Error: %s", e.getMessage()), e);
         }
     }
 
+    // compiled schema and JAXB context are built once (on first use) and shared by all threads
+    protected <T> CaseFileParserCache<T> getParserCache(Class<T> clazz) {
+        return (CaseFileParserCache<T>) parserCaches.computeIfAbsent(clazz, clazzTmp -> {
+            try (InputStream xsd = loadResourceXSDAsSteam()) {
+                return new CaseFileParserCache<>(clazz, xsd);
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("Cannot compile xml schema %s: %s", getResourcePathXSD(), e.getMessage()), e);
+            }
+        });
+    }
+
 
     protected InputStream loadResourceXSDAsSteam() {
         String resourcePathXSD = getResourcePathXSD();
@@ -211,7 +228,7 @@ public abstract class BaseCaseFileValidator {
         return inputStream;
     }
 
-    protected Optional<String> parsePhotoFromNodeObject(
+    protected Optional<PhotoInspection> parsePhotoFromNodeObject(
             IndividualIdPair individualIdPair,
             String objectName,
             Object photo,
@@ -226,18 +243,18 @@ public abstract class BaseCaseFileValidator {
             return Optional.empty();
         }
 
-        String photoString = StringUtils.defaultString(((org.w3c.dom.Node)photo).getTextContent(), "");
-        return Optional.of(photoString);
+        // text nodes are decoded one by one, photo is never concatenated into single string
+        return Optional.of(PhotoInspection.inspect((org.w3c.dom.Node)photo));
     }
 
     protected void validateDataPhotography(
             IndividualIdPair individualIdPair,
-            Optional<String> optionalPhoto,
+            Optional<PhotoInspection> optionalPhotoInspection,
             Optional<String> optionalPhotoGuid,
             Optional<String> optionalPhotoTypeCode,
             ValidationResult validationResult
     ) {
-        optionalPhoto.ifPresent(photo -> validateDataPhotography(individualIdPair, photo, optionalPhotoGuid, optionalPhotoTypeCode, validationResult));
+        optionalPhotoInspection.ifPresent(photoInspection -> validateDataPhotography(individualIdPair, photoInspection, optionalPhotoGuid, optionalPhotoTypeCode, validationResult));
     }
 
     protected void validateDataPhotography(
@@ -247,39 +264,47 @@ public abstract class BaseCaseFileValidator {
             Optional<String> optionalPhotoTypeCode,
             ValidationResult validationResult
     ) {
+        validateDataPhotography(individualIdPair, PhotoInspection.inspect(photo), optionalPhotoGuid, optionalPhotoTypeCode, validationResult);
+    }
 
-        if (StringUtils.isBlank(photo)) {
+    protected void validateDataPhotography(
+            IndividualIdPair individualIdPair,
+            PhotoInspection photoInspection,
+            Optional<String> optionalPhotoGuid,
+            Optional<String> optionalPhotoTypeCode,
+            ValidationResult validationResult
+    ) {
+
+        if (photoInspection.isBlank()) {
             validationResult.addError(String.format("Photo for individual '%s' is empty (zero-length file)", individualIdPair));
             return;
         }
 
-        byte[] bytesImage;
-        try {
-            bytesImage   = Base64.getDecoder().decode(photo);
-
-            if (bytesImage.length == 0) {
-                validationResult.addError(String.format("Photo for individual '%s' is empty (zero-length file)", individualIdPair));
-                return;
-            } else if (bytesImage.length >= 50 * 1024 * 1024) {
-                validationResult.addError(String.format("Photo for individual '%' is too large (%d bytes, limit 50 MB)", individualIdPair, bytesImage.length));
-                return;
-            }
-        } catch (IllegalArgumentException iae) {
+        if (photoInspection.isBase64Error()) {
             validationResult.addError(String.format("Photo for individual '%s' cannot be decoded (base64)", individualIdPair));
             return;
         }
 
-        try {
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytesImage));
+        long imageSize = photoInspection.getDecodedSize();
+        if (imageSize == 0) {
+            validationResult.addError(String.format("Photo for individual '%s' is empty (zero-length file)", individualIdPair));
+            return;
+        } else if (imageSize >= 50 * 1024 * 1024) {
+            validationResult.addError(String.format("Photo for individual '%s' is too large (%d bytes, limit 50 MB)", individualIdPair, imageSize));
+            return;
+        }
 
-            int imageWidth  = image.getWidth(null);
-            int imageHeight  = image.getHeight(null);
-            if ((imageWidth<=10) || (imageHeight<=10)) {
-                validationResult.addError(String.format("Photo for individual '%s' is too small (%d x %d)", individualIdPair, imageWidth, imageHeight));
-                return;
-            }
-        } catch (IOException ioe) {
-            validationResult.addError(String.format("Photo for individual '%s' cannot be read via ImageIO: %s. Is that a valid image format?", individualIdPair, ioe.getMessage()));
+        // only image headers are read (unless ImageProbe.strictModeFlag is set)
+        ImageProbe imageProbe = photoInspection.getImageProbe();
+        if (imageProbe == null) {
+            validationResult.addError(String.format("Photo for individual '%s' cannot be read via ImageIO: %s. Is that a valid image format?", individualIdPair, photoInspection.getImageErrorMessage()));
+            return;
+        }
+
+        int imageWidth  = imageProbe.getWidth();
+        int imageHeight  = imageProbe.getHeight();
+        if ((imageWidth<=10) || (imageHeight<=10)) {
+            validationResult.addError(String.format("Photo for individual '%s' is too small (%d x %d)", individualIdPair, imageWidth, imageHeight));
             return;
         }
 
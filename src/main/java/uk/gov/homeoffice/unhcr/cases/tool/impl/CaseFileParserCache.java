@@ -0,0 +1,133 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// holds compiled (thread-safe) Schema and JAXBContext for one case file model class,
+// Unmarshaller and SAXParser are not thread-safe, so they are pooled and reset between uses
+public class CaseFileParserCache<T> {
+
+    final static private int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    final private Class<T> clazz;
+
+    final private Schema schema;
+
+    final private JAXBContext jaxbContext;
+
+    final private SAXParserFactory saxParserFactory;
+
+    final private XMLInputFactory xmlInputFactory;
+
+    final private BlockingQueue<PooledParser> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static class PooledParser {
+        final Unmarshaller unmarshaller;
+        final SAXParser saxParser;
+
+        PooledParser(Unmarshaller unmarshaller, SAXParser saxParser) {
+            this.unmarshaller = unmarshaller;
+            this.saxParser = saxParser;
+        }
+    }
+
+    public CaseFileParserCache(Class<T> clazz, InputStream xsd) throws JAXBException, SAXException, ParserConfigurationException {
+        this.clazz = clazz;
+
+        jaxbContext = JAXBContext.newInstance(clazz);
+
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schema = schemaFactory.newSchema(new StreamSource(xsd));
+
+        saxParserFactory = SAXParserFactory.newInstance();
+
+        saxParserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+
+        saxParserFactory.setValidating(true);
+        saxParserFactory.setSchema(schema);
+
+        //this is to ignore <UNHCR_RRF xmlns="http://tempuri.org/ElectronicRRF.xsd">
+        saxParserFactory.setNamespaceAware(false);
+
+        xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public JAXBContext getJaxbContext() {
+        return jaxbContext;
+    }
+
+    public T parse(InputStream inputStream) throws JAXBException, SAXException, ParserConfigurationException {
+        PooledParser pooledParser = borrow();
+        try {
+            XMLReader reader = pooledParser.saxParser.getXMLReader();
+            SAXSource source = new SAXSource(reader, new InputSource(inputStream));
+
+            Object unhcrrrf = pooledParser.unmarshaller.unmarshal(source);
+            return clazz.cast(unhcrrrf);
+        } finally {
+            release(pooledParser);
+        }
+    }
+
+    // unmarshaller of parse() and of streaming (fragment) unmarshalling, so both accept the same documents
+    // (default event handler, unexpected elements are skipped; schema errors are not reported by parse() either)
+    public Unmarshaller createUnmarshaller() throws JAXBException {
+        return jaxbContext.createUnmarshaller();
+    }
+
+    // StAX reader for unmarshalling document fragments (e.g. one CASE at a time)
+    public XMLStreamReader createStreamReader(InputStream inputStream) throws XMLStreamException {
+        synchronized (xmlInputFactory) {
+            //XMLInputFactory is not guaranteed to be thread-safe
+            return xmlInputFactory.createXMLStreamReader(inputStream);
+        }
+    }
+
+    private PooledParser borrow() throws JAXBException, SAXException, ParserConfigurationException {
+        PooledParser pooledParser = pool.poll();
+        if (pooledParser != null) return pooledParser;
+
+        SAXParser saxParser;
+        synchronized (saxParserFactory) {
+            //SAXParserFactory is not guaranteed to be thread-safe
+            saxParser = saxParserFactory.newSAXParser();
+        }
+        return new PooledParser(createUnmarshaller(), saxParser);
+    }
+
+    private void release(PooledParser pooledParser) {
+        try {
+            // clears handlers and state left by previous (possibly failed) parse
+            pooledParser.saxParser.reset();
+        } catch (RuntimeException exception) {
+            return; //do not reuse broken parser
+        }
+        pool.offer(pooledParser); //drop when pool is full
+    }
+}
@@ -0,0 +1,68 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+// reads image format and dimensions from image headers (JPEG, PNG, GIF, BMP...), pixels are not decoded
+public class ImageProbe {
+
+    // decode whole image (slow, but also detects corrupted pixel data)
+    static public boolean strictModeFlag = false;
+
+    final private String formatName;
+
+    final private int width;
+
+    final private int height;
+
+    private ImageProbe(String formatName, int width, int height) {
+        this.formatName = formatName;
+        this.width = width;
+        this.height = height;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public static ImageProbe probe(InputStream inputStream) throws IOException {
+        return probe(inputStream, strictModeFlag);
+    }
+
+    public static ImageProbe probe(InputStream inputStream, boolean strictFlag) throws IOException {
+        // memory cache, so ImageIO does not create temporary files
+        try (ImageInputStream imageInputStream = new MemoryCacheImageInputStream(inputStream)) {
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext())
+                throw new IOException("Unknown image format");
+
+            ImageReader imageReader = imageReaders.next();
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+
+                if (strictFlag) {
+                    BufferedImage image = imageReader.read(0);
+                    return new ImageProbe(imageReader.getFormatName(), image.getWidth(), image.getHeight());
+                } else {
+                    return new ImageProbe(imageReader.getFormatName(), imageReader.getWidth(0), imageReader.getHeight(0));
+                }
+            } finally {
+                imageReader.dispose();
+            }
+        }
+    }
+}
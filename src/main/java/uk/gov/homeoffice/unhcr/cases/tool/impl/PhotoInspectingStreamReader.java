@@ -0,0 +1,61 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// inspects content of photo elements while it is being read, JAXB then sees empty element (base64 text is never buffered)
+// inspection is assigned to the unmarshalled object containing the photo (see assignPendingInspection, called from Unmarshaller.Listener)
+public class PhotoInspectingStreamReader extends StreamReaderDelegate {
+
+    final private String photoElementName;
+
+    final private Map<Object, PhotoInspection> photoInspections = new IdentityHashMap<>();
+
+    private PhotoInspection pendingInspection;
+
+    public PhotoInspectingStreamReader(XMLStreamReader reader, String photoElementName) {
+        super(reader);
+        this.photoElementName = photoElementName;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if ((getEventType() == XMLStreamConstants.START_ELEMENT) && (photoElementName.equals(getLocalName()))) {
+            // leaves parent reader at END_ELEMENT of photo
+            pendingInspection = PhotoInspection.inspect(getParent());
+            return getEventType();
+        }
+        return super.next();
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        // go through next(), so photo content is skipped here too
+        int event = next();
+        while (((event == XMLStreamConstants.CHARACTERS) && (isWhiteSpace())) ||
+                ((event == XMLStreamConstants.CDATA) && (isWhiteSpace())) ||
+                (event == XMLStreamConstants.SPACE) ||
+                (event == XMLStreamConstants.PROCESSING_INSTRUCTION) ||
+                (event == XMLStreamConstants.COMMENT)) {
+            event = next();
+        }
+        if ((event != XMLStreamConstants.START_ELEMENT) && (event != XMLStreamConstants.END_ELEMENT))
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        return event;
+    }
+
+    public void assignPendingInspection(Object target) {
+        if (pendingInspection != null) {
+            photoInspections.put(target, pendingInspection);
+            pendingInspection = null;
+        }
+    }
+
+    public Map<Object, PhotoInspection> getPhotoInspections() {
+        return photoInspections;
+    }
+}
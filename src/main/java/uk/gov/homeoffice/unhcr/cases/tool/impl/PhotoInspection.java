@@ -0,0 +1,310 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+
+// result of streaming base64 photo content through decoder, byte counter and image probe
+// neither decoded bytes nor (for readers over parser/DOM buffers) base64 text are copied as a whole
+public class PhotoInspection {
+
+    private boolean blank = true;
+
+    private boolean base64Error = false;
+
+    private long decodedSize = 0;
+
+    private ImageProbe imageProbe;
+
+    private String imageErrorMessage;
+
+    private PhotoInspection() {}
+
+    public boolean isBlank() {
+        return blank;
+    }
+
+    public boolean isBase64Error() {
+        return base64Error;
+    }
+
+    public long getDecodedSize() {
+        return decodedSize;
+    }
+
+    public ImageProbe getImageProbe() {
+        return imageProbe;
+    }
+
+    public String getImageErrorMessage() {
+        return imageErrorMessage;
+    }
+
+    public static PhotoInspection inspect(String photo) {
+        try {
+            return inspect(new StringReader(photo));
+        } catch (IOException e) {
+            throw new RuntimeException(e); //StringReader does not throw
+        }
+    }
+
+    // streams text nodes of DOM element, without concatenating them via getTextContent()
+    public static PhotoInspection inspect(Node node) {
+        try {
+            return inspect(new NodeTextReader(node));
+        } catch (IOException e) {
+            throw new RuntimeException(e); //NodeTextReader does not throw
+        }
+    }
+
+    // reader must be positioned at START_ELEMENT, it is left at matching END_ELEMENT
+    public static PhotoInspection inspect(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+        try {
+            return inspect(new ElementTextReader(xmlStreamReader));
+        } catch (IOException e) {
+            throw new XMLStreamException(e.getMessage(), e);
+        }
+    }
+
+    // reads base64 text to the end (IOException comes only from the reader itself)
+    public static PhotoInspection inspect(Reader base64Reader) throws IOException {
+        PhotoInspection photoInspection = new PhotoInspection();
+
+        Base64CharsInputStream base64CharsInputStream = new Base64CharsInputStream(base64Reader, photoInspection);
+        CountingInputStream decodedInputStream = new CountingInputStream(new Base64ErrorTrackingInputStream(Base64.getDecoder().wrap(base64CharsInputStream), photoInspection));
+
+        try {
+            photoInspection.imageProbe = ImageProbe.probe(decodedInputStream);
+        } catch (IOException ioe) {
+            if (!photoInspection.base64Error) photoInspection.imageErrorMessage = ioe.getMessage();
+        }
+
+        // image probe reads headers only, the rest is decoded to check base64 and count size
+        try {
+            ByteStreams.exhaust(decodedInputStream);
+        } catch (IOException ioe) {
+            //already flagged as base64 error
+        }
+        photoInspection.decodedSize = decodedInputStream.getCount();
+
+        // consume remaining text (after base64 error), so whole content is checked for blanks
+        // text left after base64 padding is an error too (the same as Base64.Decoder.decode)
+        if (base64CharsInputStream.drain()) photoInspection.base64Error = true;
+
+        return photoInspection;
+    }
+
+    // reads descendant text (the same as getTextContent()) node by node
+    private static class NodeTextReader extends Reader {
+
+        final private Deque<Node> textNodes = new ArrayDeque<>();
+
+        private String text = "";
+
+        private int position = 0;
+
+        NodeTextReader(Node node) {
+            collectTextNodes(node);
+        }
+
+        private void collectTextNodes(Node node) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if ((child.getNodeType() == Node.TEXT_NODE) || (child.getNodeType() == Node.CDATA_SECTION_NODE)) {
+                    textNodes.add(child);
+                } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    collectTextNodes(child);
+                }
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) return 0;
+            while (position >= text.length()) {
+                if (textNodes.isEmpty()) return -1;
+                text = StringUtils.defaultString(textNodes.poll().getNodeValue());
+                position = 0;
+            }
+            int count = Math.min(len, text.length() - position);
+            text.getChars(position, position + count, cbuf, off);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // reads text of current element (and its descendants) directly from parser events
+    private static class ElementTextReader extends Reader {
+
+        final private XMLStreamReader xmlStreamReader;
+
+        private int depth = 0;
+
+        private int textOffset = 0;
+
+        private int textRemaining = 0;
+
+        private boolean finished = false;
+
+        ElementTextReader(XMLStreamReader xmlStreamReader) {
+            this.xmlStreamReader = xmlStreamReader;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            try {
+                while (true) {
+                    if (textRemaining > 0) {
+                        int count = xmlStreamReader.getTextCharacters(textOffset, cbuf, off, Math.min(len, textRemaining));
+                        textOffset += count;
+                        textRemaining -= count;
+                        return count;
+                    }
+                    if (finished) return -1;
+
+                    switch (xmlStreamReader.next()) {
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            textOffset = 0;
+                            textRemaining = xmlStreamReader.getTextLength();
+                            break;
+                        case XMLStreamConstants.START_ELEMENT:
+                            depth++;
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            if (depth == 0) finished = true;
+                            else depth--;
+                            break;
+                        default:
+                            //ignore comments, processing instructions
+                    }
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // passes characters as (ASCII) bytes to base64 decoder, non-ASCII characters are invalid base64
+    private static class Base64CharsInputStream extends InputStream {
+
+        final private Reader reader;
+
+        final private PhotoInspection photoInspection;
+
+        final private char[] buffer = new char[8 * 1024];
+
+        private int position = 0;
+
+        private int length = 0;
+
+        Base64CharsInputStream(Reader reader, PhotoInspection photoInspection) {
+            this.reader = reader;
+            this.photoInspection = photoInspection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= length) {
+                if (!fill()) return -1;
+            }
+            char character = buffer[position++];
+            return (character < 128) ? character : '?';
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position >= length) {
+                if (!fill()) return -1;
+            }
+            int count = Math.min(len, length - position);
+            for (int index = 0; index < count; index++) {
+                char character = buffer[position++];
+                bytes[offset + index] = (byte) ((character < 128) ? character : '?');
+            }
+            return count;
+        }
+
+        // returns true when any characters were left unread
+        boolean drain() throws IOException {
+            boolean remaining = position < length;
+            while (fill()) {
+                remaining = true;
+                position = length;
+            }
+            return remaining;
+        }
+
+        private boolean fill() throws IOException {
+            length = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return false;
+            }
+            if (photoInspection.blank) {
+                for (int index = 0; index < length; index++) {
+                    if (!Character.isWhitespace(buffer[index])) {
+                        photoInspection.blank = false;
+                        break;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Base64ErrorTrackingInputStream extends InputStream {
+
+        final private InputStream inputStream;
+
+        final private PhotoInspection photoInspection;
+
+        Base64ErrorTrackingInputStream(InputStream inputStream, PhotoInspection photoInspection) {
+            this.inputStream = inputStream;
+            this.photoInspection = photoInspection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return inputStream.read();
+            } catch (IOException ioe) {
+                photoInspection.base64Error = true;
+                throw ioe;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                return inputStream.read(bytes, offset, length);
+            } catch (IOException ioe) {
+                photoInspection.base64Error = true;
+                throw ioe;
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.gov.homeoffice.unhcr.cases.model.v3_1.UNHCRRRF;
 import uk.gov.homeoffice.unhcr.cases.reference.ReferenceDataContainer;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileFormat;
 import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
 import uk.gov.homeoffice.unhcr.exception.ParseCaseFileException;
 
@@ -28,19 +29,18 @@ public class V3CaseFileValidator_1 extends BaseCaseFileValidator {
     }
 
     @Override
-    public boolean isApplicable(byte[] bytes) {
-        String content  = new String(bytes);
+    public boolean isApplicable(CaseFileFormat caseFileFormat) {
         return
-                (content.contains("<UNHCR_RRF")) &&
-                (!content.contains("<IndividualGUID"));
+                (caseFileFormat.isRootElementFound()) &&
+                (!caseFileFormat.isIndividualGuidFound());
     }
 
     @Override
-    public ValidationResult validate(byte[] bytes) {
+    public ValidationResult validate(byte[] bytes, CaseFileFormat caseFileFormat) {
         ValidationResult validationResult   = new ValidationResult();
         validationResult.setValidator(this);
 
-        if (!isApplicable(bytes))
+        if (!isApplicable(caseFileFormat))
             throw new RuntimeException("Validator is not applicable");
 
         try {
@@ -1,13 +1,20 @@
 package uk.gov.homeoffice.unhcr.cases.tool.impl;
 
 import com.google.common.collect.Multimap;
+import com.google.common.io.ByteSource;
+import jakarta.xml.bind.Unmarshaller;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.gov.homeoffice.unhcr.cases.model.v4_1.UNHCRRRF;
 import uk.gov.homeoffice.unhcr.cases.reference.ReferenceDataContainer;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileFormat;
 import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
 import uk.gov.homeoffice.unhcr.exception.ParseCaseFileException;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -17,12 +24,17 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
 
     final static public String RESOURCE_PATH_XSD  = "/uk/gov/homeoffice/unhcr/xsd/v4_1/rrf-v4.xsd";
 
+    // case files larger than this are validated one CASE at a time (0 - always, negative - never)
+    static public long streamingModeThreshold = 10 * 1024 * 1024;
+
+    // estimated memory needed to validate single CASE in streaming mode
+    static public long streamingCaseMemoryCost = 8 * 1024 * 1024;
+
     @Override
-    public boolean isApplicable(byte[] bytes) {
-        String content  = new String(bytes);
+    public boolean isApplicable(CaseFileFormat caseFileFormat) {
         return
-                (content.contains("<UNHCR_RRF")) &&
-                (content.contains("<IndividualGUID"));
+                (caseFileFormat.isRootElementFound()) &&
+                (caseFileFormat.isIndividualGuidFound());
     }
 
     @Override
@@ -36,11 +48,18 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
     }
 
     @Override
-    public ValidationResult validate(byte[] bytes) {
+    public ValidationResult validate(byte[] bytes, CaseFileFormat caseFileFormat) {
+        if (isStreamingMode(bytes.length)) {
+            if (!isApplicable(caseFileFormat))
+                throw new RuntimeException("Validator is not applicable");
+
+            return validateCaseByCase(new ByteArrayInputStream(bytes));
+        }
+
         ValidationResult validationResult   = new ValidationResult();
         validationResult.setValidator(this);
 
-        if (!isApplicable(bytes))
+        if (!isApplicable(caseFileFormat))
             throw new RuntimeException("Validator is not applicable");
 
         try {
@@ -62,8 +81,117 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
             );
 
             for (UNHCRRRF.CASE unhcrCase : unhcrCases) {
-                validateCase(unhcrCase, validationResult);
+                validateCase(unhcrCase, Collections.emptyMap(), validationResult);
+            }
+
+        } catch (ParseCaseFileException exception) {
+            validationResult.addError(exception.getMessage());
+        }
+
+        return validationResult;
+    }
+
+    @Override
+    public ValidationResult validate(ByteSource byteSource, CaseFileFormat caseFileFormat) throws IOException {
+        Optional<Long> optionalSize = byteSource.sizeIfKnown().toJavaUtil();
+        if ((optionalSize.isPresent()) && (isStreamingMode(optionalSize.get()))) {
+            if (!isApplicable(caseFileFormat))
+                throw new RuntimeException("Validator is not applicable");
+
+            try (InputStream inputStream = byteSource.openBufferedStream()) {
+                return validateCaseByCase(inputStream);
             }
+        }
+        return validate(byteSource.read(), caseFileFormat);
+    }
+
+    @Override
+    public long estimateMemoryCost(long size) {
+        // only (in memory) case file bytes and one CASE at a time
+        if (isStreamingMode(size)) return size + streamingCaseMemoryCost;
+        return super.estimateMemoryCost(size);
+    }
+
+    private boolean isStreamingMode(long size) {
+        return (streamingModeThreshold >= 0) && (size > streamingModeThreshold);
+    }
+
+    // unmarshals and validates one CASE at a time, so peak memory depends on the largest case, not the whole file
+    // only cross-case state (case count, ProcessingGroupNumbers) is kept; errors are reported in the same order as in validate(byte[])
+    public ValidationResult validateCaseByCase(InputStream inputStream) {
+        ValidationResult validationResult   = new ValidationResult();
+        validationResult.setValidator(this);
+
+        CaseFileParserCache<UNHCRRRF> parserCache = getParserCache(UNHCRRRF.class);
+
+        ValidationResult casesValidationResult = new ValidationResult();
+        ParseCaseFileException casesException = null;
+        String groupIndividualIndicator = null;
+        int casesCount = 0;
+        List<String> processingGroupNumbers = new ArrayList<>();
+
+        try {
+            // the same unmarshaller settings as parseCaseFile(), e.g. unexpected elements are skipped by both
+            Unmarshaller unmarshaller = parserCache.createUnmarshaller();
+            PhotoInspectingStreamReader reader = new PhotoInspectingStreamReader(parserCache.createStreamReader(inputStream), "Photo");
+            unmarshaller.setListener(new Unmarshaller.Listener() {
+                @Override
+                public void afterUnmarshal(Object target, Object parent) {
+                    if (target instanceof UNHCRRRF.CASE.DataPhotograph) reader.assignPendingInspection(target);
+                }
+            });
+            try {
+                while (reader.hasNext()) {
+                    if (reader.isStartElement() && "RRFBATCHTYPE".equals(reader.getLocalName())) {
+                        UNHCRRRF.RRFBATCHTYPE unhcrRrfBatchType = unmarshaller.unmarshal(reader, UNHCRRRF.RRFBATCHTYPE.class).getValue();
+                        groupIndividualIndicator = unhcrRrfBatchType.getGroupIndividualIndicator();
+                    } else if (reader.isStartElement() && "CASE".equals(reader.getLocalName())) {
+                        UNHCRRRF.CASE unhcrCase = unmarshaller.unmarshal(reader, UNHCRRRF.CASE.class).getValue();
+                        casesCount++;
+
+                        if (unhcrCase.getDataProcessGroup()!=null)
+                            processingGroupNumbers.add(unhcrCase.getDataProcessGroup().getProcessingGroupNumber());
+
+                        // after first exception, only cross-case state is collected (as in validate(byte[]))
+                        if (casesException==null) {
+                            try {
+                                validateCase(unhcrCase, reader.getPhotoInspections(), casesValidationResult);
+                            } catch (ParseCaseFileException exception) {
+                                casesException = exception;
+                            }
+                        }
+                        reader.getPhotoInspections().clear();
+                    } else {
+                        reader.next(); //unmarshal() already moves reader past the end of element
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            //JAXB exceptions carry the message in linked exception
+            String errorMessage = StringUtils.defaultString(e.getMessage(), ExceptionUtils.getRootCause(e).getMessage());
+            validationResult.addError(String.format("Cannot parse xml. Is is correct format? Error: %s", errorMessage));
+            return validationResult;
+        }
+
+        try {
+            validateRrfBatchType(
+                    groupIndividualIndicator,
+                    casesCount,
+                    validationResult
+            );
+
+            validateNoDuplicates(
+                    "CASE.dataProcessGroup.ProcessingGroupNumber",
+                    processingGroupNumbers,
+                    validationResult
+            );
+
+            casesValidationResult.getErrors().forEach(validationResult::addError);
+            casesValidationResult.getWarnings().forEach(validationResult::addWarning);
+
+            if (casesException!=null) throw casesException;
 
         } catch (ParseCaseFileException exception) {
             validationResult.addError(exception.getMessage());
@@ -72,7 +200,8 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
         return validationResult;
     }
 
-    private ValidationResult validateCase(UNHCRRRF.CASE unhcrCase, ValidationResult validationResult) throws ParseCaseFileException {
+    // photoInspections - photos already inspected while streaming (by DataPhotograph), others are inspected from DOM
+    private ValidationResult validateCase(UNHCRRRF.CASE unhcrCase, Map<Object, PhotoInspection> photoInspections, ValidationResult validationResult) throws ParseCaseFileException {
 
         List<IndividualIdPair> unhcrCaseIndividualIdPairs = unhcrCase.getDataIndividual().stream()
                 .map(unhcrCaseIndividual -> IndividualIdPair.ofIndividualGuid(unhcrCaseIndividual.getIndividualGUID()))
@@ -177,7 +306,8 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
                             validationResult
                     );
             for (Map.Entry<IndividualIdPair, UNHCRRRF.CASE.DataPhotograph> entry : unhcrCasePhotographsMap.entries()) {
-                Optional<String> optionalPhoto = parsePhotoFromNodeObject(
+                PhotoInspection photoInspection = photoInspections.get(entry.getValue());
+                Optional<PhotoInspection> optionalPhotoInspection = (photoInspection != null) ? Optional.of(photoInspection) : parsePhotoFromNodeObject(
                         entry.getKey(),
                         "DataPhotograph.Photo",
                         entry.getValue().getPhoto(),
@@ -185,7 +315,7 @@ public class V4CaseFileValidator_1 extends BaseCaseFileValidator {
                 );
                 validateDataPhotography(
                         entry.getKey(),
-                        optionalPhoto,
+                        optionalPhotoInspection,
                         ParsedString.ofMandatory(entry.getValue().getPhotoGUID()),
                         Optional.of(entry.getValue().getPhotoTypeCode()).map(photoTypeCode -> Integer.toString(photoTypeCode)),
                         validationResult
@@ -1,8 +1,16 @@
 package uk.gov.homeoffice.unhcr.cases.tool.webserver;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -16,29 +24,74 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileArchive;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileFormat;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileSource;
 import uk.gov.homeoffice.unhcr.cases.tool.CaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.MemoryBudget;
+import uk.gov.homeoffice.unhcr.cases.tool.SizeLimitedInputStream;
 import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResultCache;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.webserver.response.ValidationBatchResponseWriter;
 import uk.gov.homeoffice.unhcr.cases.tool.webserver.response.ValidationResultResponse;
+import uk.gov.homeoffice.unhcr.exception.MemoryBudgetExceededException;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.stream.Collectors;
 
 public class CaseFileValidatorHandler extends AbstractHandler {
 
     final static private Logger logger = LoggerFactory.getLogger(CaseFileValidatorHandler.class);
 
-    final static private int CASEFILE_SIZE_LIMIT    = 50 * 1024 * 1024; //50MB limit
+    final static private int CASEFILE_SIZE_LIMIT    = CaseFileValidator.CASEFILE_SIZE_LIMIT;
 
     final static private String MULTIPART_FORMDATA_TYPE = "multipart/form-data";
 
+    final static private Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    final static private int COMPRESSED_BODY_BUFFER_SIZE = 64 * 1024;
+
+    // other form fields and part headers
+    final static private int MULTIPART_OVERHEAD_LIMIT = 1024 * 1024;
+
     final static private CaseFileValidator parentValidator = new CaseFileValidator();
 
+    final static private MemoryBudget memoryBudget = MemoryBudget.getDefault();
+
+    // request waits this long for memory budget, then it is rejected
+    static public long admissionTimeoutMillis = 30 * 1000;
+
+    // sent in Retry-After header when validation queue is full
+    static public int retryAfterSeconds = 5;
+
+    final static public int DEFAULT_VALIDATION_QUEUE_SIZE = 50;
+
+    // all case files of one batch request (decompressed archive entries), see /api/v1/validate-batch
+    final static public long BATCH_SIZE_LIMIT = 4L * CASEFILE_SIZE_LIMIT;
+
     final static private Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
-    final static private MultipartConfigElement MULTI_PART_CONFIG = new MultipartConfigElement(System.getProperty("java.io.tmpdir"));
+    // parts above threshold are stored in temporary file, parsing stops as soon as case file part is over limit
+    final static private MultipartConfigElement MULTI_PART_CONFIG = new MultipartConfigElement(System.getProperty("java.io.tmpdir"), CASEFILE_SIZE_LIMIT, CASEFILE_SIZE_LIMIT + MULTIPART_OVERHEAD_LIMIT, 64 * 1024);
+
+    final static private MultipartConfigElement MULTI_PART_BATCH_CONFIG = new MultipartConfigElement(System.getProperty("java.io.tmpdir"), CASEFILE_SIZE_LIMIT, BATCH_SIZE_LIMIT + MULTIPART_OVERHEAD_LIMIT, 64 * 1024);
 
     final static private String indexPageTemplate;
     static {
@@ -50,10 +103,62 @@ public class CaseFileValidatorHandler extends AbstractHandler {
             throw new RuntimeException(ex);
         }
     }
+
+    // case files of validation requests are validated by this executor (uploads are read by server threads), requests over queue size are rejected with 503
+    final private ThreadPoolExecutor validationExecutor;
+
+    public CaseFileValidatorHandler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_VALIDATION_QUEUE_SIZE);
+    }
+
+    public CaseFileValidatorHandler(int validationThreads, int validationQueueSize) {
+        this(validationThreads, validationQueueSize, createPlatformThreadFactory());
+    }
+
+    // validations run on threads of given factory (e.g. virtual threads), at most validationThreads at once
+    public CaseFileValidatorHandler(int validationThreads, int validationQueueSize, ThreadFactory threadFactory) {
+        if (validationThreads < 1) throw new IllegalArgumentException(String.format("validation threads must be positive: %s", validationThreads));
+        if (validationQueueSize < 0) throw new IllegalArgumentException(String.format("validation queue size must be 0 or positive: %s", validationQueueSize));
+
+        this.validationExecutor = new ThreadPoolExecutor(
+                validationThreads, validationThreads,
+                0L, TimeUnit.MILLISECONDS,
+                (validationQueueSize > 0) ? new ArrayBlockingQueue<>(validationQueueSize) : new SynchronousQueue<>(),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    private static ThreadFactory createPlatformThreadFactory() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "validation-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        validationExecutor.shutdown();
+        super.doStop();
+    }
+
     private static boolean isMultipartRequest(Request request) {
         return request.getContentType() != null && request.getContentType().startsWith(MULTIPART_FORMDATA_TYPE);
     }
 
+    private static boolean isValidationRequest(String target, Request request) {
+        if (("/api/v1/validate".equals(target)) || ("/api/v1/validate-batch".equals(target))) return true;
+        return ("POST".equals(request.getMethod())) && (isMultipartRequest(request)) && (isValidateFormTarget(target));
+    }
+
+    private static boolean isValidateFormTarget(String target) {
+        return  (StringUtils.isBlank(target))||
+                ("/".equals(target))||  //index file
+                ("/validate".equals(target));
+    }
+
     @Override
     public void handle(
             String target,
@@ -63,16 +168,57 @@ public class CaseFileValidatorHandler extends AbstractHandler {
     ) throws IOException {
 
         try {
-            if (
-                    (StringUtils.isBlank(target))||
-                    ("/".equals(target))||  //index file
-                    ("/validate".equals(target))
-            ) {
+            // overloaded server rejects upload before it is read (client sending 'Expect: 100-continue' does not send it at all)
+            if ((isValidationRequest(target, jettyRequest)) && (isValidationQueueFull())) {
+                sendOverloaded(target, httpServletResponse);
+                return;
+            }
+
+            // request (upload) is read by server thread, only validation of case file read into memory runs on validation executor
+            handleRequest(target, jettyRequest, httpServletRequest, httpServletResponse);
+        } finally {
+            jettyRequest.setHandled(true);
+        }
+    }
+
+    private boolean isValidationQueueFull() {
+        return (validationExecutor.getActiveCount() >= validationExecutor.getMaximumPoolSize()) && (validationExecutor.getQueue().remainingCapacity() == 0);
+    }
+
+    private static void sendOverloaded(String target, HttpServletResponse httpServletResponse) throws IOException {
+        logger.warn("Validation queue is full, request {} is rejected", target);
+        sendOverloaded(target, httpServletResponse, "Error: Too many case files are being validated. Try again later.");
+    }
+
+    private static void sendOverloaded(String target, HttpServletResponse httpServletResponse, String errorMessage) throws IOException {
+        logger.warn("Server is overloaded, request {} is rejected: {}", target, errorMessage);
+        httpServletResponse.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        httpServletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, errorMessage);
+    }
+
+    private void handleRequest(
+            String target,
+            Request jettyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse
+    ) throws IOException {
+
+        try {
+            if (isValidateFormTarget(target)) {
                 handleValidateForm(jettyRequest, httpServletRequest, httpServletResponse);
             } else
             if ("/api/v1/validate".equals(target)) {
                 handlerApiV1Validate(jettyRequest, httpServletRequest, httpServletResponse);
             } else
+            if ("/api/v1/validate-batch".equals(target)) {
+                handlerApiV1ValidateBatch(jettyRequest, httpServletRequest, httpServletResponse);
+            } else
+            if (StringUtils.startsWith(target, "/api/v1/result/")) {
+                handlerApiV1Result(target, jettyRequest, httpServletRequest, httpServletResponse);
+            } else
+            if ("/api/v1/cache".equals(target)) {
+                handlerApiV1Cache(httpServletResponse);
+            } else
             if ("/favicon.ico".equals(target)) {
                 //ignore
             } else
@@ -80,6 +226,11 @@ public class CaseFileValidatorHandler extends AbstractHandler {
                 throw new RuntimeException(String.format("unsupported path %s", StringEscapeUtils.escapeHtml3(target)));
             }
 
+        } catch (RejectedExecutionException e) {
+            sendOverloaded(target, httpServletResponse);
+        } catch (MemoryBudgetExceededException e) {
+            // memory is taken by other validations, as with full queue client can try again later
+            sendOverloaded(target, httpServletResponse, String.format("Error: %s", e.getMessage()));
         } catch (Exception e) {
             String errorMessage = String.format("Error: %s", e.getMessage());
             logger.error(errorMessage, e);
@@ -87,36 +238,33 @@ public class CaseFileValidatorHandler extends AbstractHandler {
                     HttpServletResponse.SC_BAD_REQUEST,
                     String.format(errorMessage, e.getMessage())
             );
-        } finally {
-            jettyRequest.setHandled(true);
         }
     }
 
-    private void handleValidateForm(Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException {
+    private void handleValidateForm(Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException, InterruptedException {
 
         final boolean multipartRequest = ("POST".equals(jettyRequest.getMethod())) && isMultipartRequest(jettyRequest);
 
         String caseFileName = "(none)";
-        byte[] caseFileBytes = null;
+        ValidationResult validationResult = null;
         if (multipartRequest) {
             if (jettyRequest.getContentLength() > CASEFILE_SIZE_LIMIT)
                 throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)));
 
             jettyRequest.setAttribute(Request.__MULTIPART_CONFIG_ELEMENT, MULTI_PART_CONFIG);
 
-            Part caseFilePart = jettyRequest.getPart("casefile");
-            if (caseFilePart!=null) {
-                caseFileName = caseFilePart.getSubmittedFileName();
-                caseFileBytes = ByteStreams.toByteArray(caseFilePart.getInputStream());
-            }
+            try {
+                Part caseFilePart = getPart(jettyRequest, "casefile");
+                if (caseFilePart!=null) {
+                    caseFileName = caseFilePart.getSubmittedFileName();
 
-            //clear any temporary file
-            for (Part part : jettyRequest.getParts()) part.delete();
-        }
-
-        ValidationResult validationResult = null;
-        if (caseFileBytes!=null) {
-            validationResult = parentValidator.validate(caseFileBytes);
+                    // part is already parsed (large one into temporary file), memory is reserved before it is read
+                    validationResult = validate(caseFilePart.getInputStream(), caseFilePart.getSize()).validationResult;
+                }
+            } finally {
+                //clear any temporary file
+                deleteParts(jettyRequest);
+            }
         }
 
         String validatorId = "";
@@ -149,33 +297,400 @@ public class CaseFileValidatorHandler extends AbstractHandler {
         httpServletResponse.getWriter().println(indexPageBody);
     }
 
-    private void handlerApiV1Validate(Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException {
-        if (jettyRequest.getContentLength() > CASEFILE_SIZE_LIMIT)
+    // chunked multipart request has no content length, its size is checked by multipart parser
+    private static Part getPart(Request jettyRequest, String name) throws ServletException, IOException {
+        try {
+            return jettyRequest.getPart(name);
+        } catch (IllegalStateException exception) {
+            if (StringUtils.contains(exception.getMessage(), "exceeds"))
+                throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)), exception);
+            throw exception;
+        }
+    }
+
+    private static void deleteParts(Request jettyRequest) throws ServletException, IOException {
+        try {
+            for (Part part : jettyRequest.getParts()) part.delete();
+        } catch (IllegalStateException exception) {
+            // parsing failed (e.g. part over limit), parts are deleted when request completes
+        }
+    }
+
+    private static Collection<Part> getBatchParts(Request jettyRequest) throws ServletException, IOException {
+        try {
+            return jettyRequest.getParts();
+        } catch (IllegalStateException exception) {
+            if (StringUtils.contains(exception.getMessage(), "maxRequestSize"))
+                throw new RuntimeException(String.format("Batch is too large. Limit %s", FileUtils.byteCountToDisplaySize(BATCH_SIZE_LIMIT)), exception);
+            if (StringUtils.contains(exception.getMessage(), "exceeds"))
+                throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)), exception);
+            throw exception;
+        }
+    }
+
+    // result of uploaded case file, with SHA-256 of its content (ETag)
+    private static class UploadValidation {
+
+        final String contentHash;
+
+        final ValidationResult validationResult;
+
+        UploadValidation(String contentHash, ValidationResult validationResult) {
+            this.contentHash = contentHash;
+            this.validationResult = validationResult;
+        }
+    }
+
+    // memory is reserved before case file is read, case file is read (once) into array of exact size and hashed as it is read
+    private UploadValidation validate(InputStream inputStream, long size) throws IOException, InterruptedException {
+        if (size > CASEFILE_SIZE_LIMIT)
             throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)));
 
-        byte[] caseFileBytes = ByteStreams.toByteArray(httpServletRequest.getInputStream());
+        long memoryReserved = memoryBudget.acquire(estimateMemoryCost(size), admissionTimeoutMillis);
+        try (HashingInputStream caseFileStream = new HashingInputStream(Hashing.sha256(), inputStream)) {
+            byte[] caseFileBytes = new byte[(int) size];
+            ByteStreams.readFully(caseFileStream, caseFileBytes);
+            memoryReserved = trimReservation(caseFileBytes, memoryReserved);
+            String contentHash = caseFileStream.hash().toString();
+            return new UploadValidation(contentHash, validateOnExecutor(caseFileBytes, contentHash));
+        } finally {
+            memoryBudget.release(memoryReserved);
+        }
+    }
+
+    // whole estimated cost is reserved at once, before case file is read (format is not known yet, so the most expensive validator counts)
+    // validation then never waits for more memory while holding a part of it (two requests holding parts could wait for each other)
+    private static long estimateMemoryCost(long size) {
+        return Math.min(parentValidator.estimateMemoryCost(size, BaseCaseFileValidator.getValidators()), memoryBudget.getCapacity());
+    }
 
-        ValidationResult validationResult = null;
-        if (caseFileBytes.length>0) {
-            validationResult = parentValidator.validate(caseFileBytes);
+    // once case file is read, reservation over cost of its applicable validators is released, returns the rest
+    private static long trimReservation(byte[] caseFileBytes, long memoryReserved) {
+        long memoryCost = Math.min(
+                parentValidator.estimateMemoryCost(caseFileBytes.length, CaseFileFormat.detect(caseFileBytes), BaseCaseFileValidator.getValidators()),
+                memoryBudget.getCapacity());
+        if (memoryReserved <= memoryCost) return memoryReserved;
+
+        memoryBudget.release(memoryReserved - memoryCost);
+        return memoryCost;
+    }
+
+    // archive entry of batch is read only after memory (its whole estimated cost) is reserved for it, the reservation is held till it is validated (or discarded)
+    // size of ZIP entry with data descriptor is not known in advance, cost of the limit is reserved while it is read
+    private CaseFileSource readEntry(String entryName, long entrySize, InputStream entryStream) throws IOException {
+        if (entrySize > CASEFILE_SIZE_LIMIT)
+            return CaseFileSource.ofError(entryName, new IOException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT))));
+
+        long memoryReserved;
+        try {
+            memoryReserved = memoryBudget.acquire(estimateMemoryCost((entrySize >= 0) ? entrySize : CASEFILE_SIZE_LIMIT), admissionTimeoutMillis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory budget");
+        }
+
+        try {
+            byte[] caseFileBytes;
+            if (entrySize >= 0) {
+                // array of exact size (archive checks entry size when entry ends)
+                caseFileBytes = new byte[(int) entrySize];
+                ByteStreams.readFully(entryStream, caseFileBytes);
+            } else {
+                // read one byte over limit, to find out if entry is too large
+                caseFileBytes = ByteStreams.toByteArray(ByteStreams.limit(entryStream, CASEFILE_SIZE_LIMIT + 1));
+            }
+            if (caseFileBytes.length > CASEFILE_SIZE_LIMIT) {
+                memoryBudget.release(memoryReserved);
+                return CaseFileSource.ofError(entryName, new IOException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT))));
+            }
+
+            // e.g. entry of unknown size, or format with cheaper validators
+            memoryReserved = trimReservation(caseFileBytes, memoryReserved);
+            return CaseFileSource.ofBytes(entryName, caseFileBytes, memoryReserved);
+        } catch (IOException | RuntimeException exception) {
+            memoryBudget.release(memoryReserved);
+            throw exception;
+        }
+    }
+
+    // case file of batch, errors are reported in its result
+    // memory reserved for content already in memory (archive entry, whole cost reserved by readEntry) is released here
+    private ValidationResult validate(CaseFileSource caseFileSource) {
+        ValidationResult validationResult;
+        long memoryReserved = caseFileSource.getMemoryReserved();
+        try {
+            if (caseFileSource.getSize() > CASEFILE_SIZE_LIMIT)
+                throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)));
+
+            // content not in memory yet (uploaded part), whole cost is reserved before it is read
+            if (caseFileSource.getBufferedSize() == 0) memoryReserved += memoryBudget.acquire(estimateMemoryCost(caseFileSource.getSize()), admissionTimeoutMillis);
+
+            byte[] caseFileBytes = caseFileSource.read();
+            memoryReserved = trimReservation(caseFileBytes, memoryReserved);
+            validationResult = validate(caseFileBytes, ValidationResultCache.hash(caseFileBytes));
+        } catch (Exception exception) {
+            validationResult = new ValidationResult();
+            validationResult.addError(exception.getMessage());
+        } finally {
+            memoryBudget.release(memoryReserved);
+        }
+        validationResult.setFileName(caseFileSource.getName());
+        return validationResult;
+    }
+
+    // case file already read is validated on bounded executor, request thread waits for result
+    // full executor queue is reported by RejectedExecutionException (503)
+    private ValidationResult validateOnExecutor(byte[] caseFileBytes, String contentHash) throws InterruptedException {
+        Future<ValidationResult> future = validationExecutor.submit(() -> validate(caseFileBytes, contentHash));
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            Throwables.throwIfUnchecked(exception.getCause());
+            throw new RuntimeException(exception.getCause());
+        } catch (InterruptedException exception) {
+            future.cancel(true);
+            throw exception;
         }
+    }
+
+    // memory is reserved already (whole estimated cost, capped at budget capacity, so case file over it is validated alone, as by CLI)
+    private static ValidationResult validate(byte[] caseFileBytes, String contentHash) {
+        return parentValidator.validate(caseFileBytes, contentHash, CaseFileFormat.detect(caseFileBytes), BaseCaseFileValidator.getValidators());
+    }
+
+    // hash-first protocol: when If-None-Match names SHA-256 of case file with known result, the result is sent before body is read
+    // (client sending 'Expect: 100-continue' does not upload it at all), every result has the content hash as ETag
+    private void handlerApiV1Validate(Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException, InterruptedException {
+        for (String contentHash : parseEntityTags(httpServletRequest.getHeader("If-None-Match"))) {
+            ValidationResult validationResult = lookupResult(contentHash);
+            if (validationResult != null) {
+                writeResult(httpServletResponse, contentHash, validationResult, true);
+                return;
+            }
+        }
+
+        long contentLength = jettyRequest.getContentLengthLong();
+        if (contentLength > CASEFILE_SIZE_LIMIT)
+            throw new RuntimeException(String.format("Case file is too large. Limit %s", FileUtils.byteCountToDisplaySize(CASEFILE_SIZE_LIMIT)));
 
-        ValidationResultResponse validationResultResponseObject = new ValidationResultResponse();
-        if (validationResult==null) {
+        // body is read only through the limited stream, upload is rejected as soon as it is over limit
+        // (compressed body is limited by its decompressed size, against decompression bombs)
+        InputStream bodyStream = new SizeLimitedInputStream(getBodyStream(httpServletRequest), CASEFILE_SIZE_LIMIT);
+
+        // content length of compressed body is not the case file's size
+        if (isBodyEncoded(httpServletRequest)) contentLength = -1;
+
+        UploadValidation uploadValidation = null;
+        if (contentLength >= 0) {
+            if (contentLength > 0) uploadValidation = validate(bodyStream, contentLength);
+        } else {
+            // chunked (or compressed) upload (size is unknown till the end), body is stored in temporary file first, as large multipart parts are
+            File bodyFile = File.createTempFile("casefile", ".upload");
+            try {
+                long size;
+                try (InputStream uploadStream = bodyStream) {
+                    size = Files.asByteSink(bodyFile).writeFrom(uploadStream);
+                }
+                if (size > 0) uploadValidation = validate(Files.asByteSource(bodyFile).openStream(), size);
+            } finally {
+                if (!bodyFile.delete()) bodyFile.deleteOnExit();
+            }
+        }
+
+        if (uploadValidation==null) {
+            ValidationResultResponse validationResultResponseObject = new ValidationResultResponse();
             validationResultResponseObject.setSuccess(false);
             validationResultResponseObject.setErrors(new String[] {
                     "No case file provided. Make POST request and send the case file's content in the body of the request."
             } );
+
+            httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+            httpServletResponse.setContentType("application/json;charset=utf-8");
+            httpServletResponse.getWriter().println(gson.toJson(validationResultResponseObject));
         } else {
-            validationResultResponseObject.setSuccess(validationResult.isSuccess());
-            validationResultResponseObject.setErrors(validationResult.getErrors().toArray(new String[0]));
-            validationResultResponseObject.setWarnings(validationResult.getWarnings().toArray(new String[0]));
-            validationResultResponseObject.setValidatorId(validationResult.getValidatorId());
+            writeResult(httpServletResponse, uploadValidation.contentHash, uploadValidation.validationResult, true);
+        }
+    }
+
+    private static boolean isBodyEncoded(HttpServletRequest httpServletRequest) {
+        String contentEncoding = StringUtils.trimToEmpty(httpServletRequest.getHeader("Content-Encoding"));
+        return (!contentEncoding.isEmpty()) && (!"identity".equalsIgnoreCase(contentEncoding));
+    }
+
+    // request body decompressed as it is read (Content-Encoding gzip or deflate), e.g. uploads over slow links
+    private static InputStream getBodyStream(HttpServletRequest httpServletRequest) throws IOException {
+        if (!isBodyEncoded(httpServletRequest)) return httpServletRequest.getInputStream();
+
+        String contentEncoding = StringUtils.trim(httpServletRequest.getHeader("Content-Encoding"));
+        if (("gzip".equalsIgnoreCase(contentEncoding)) || ("x-gzip".equalsIgnoreCase(contentEncoding)))
+            return new GZIPInputStream(httpServletRequest.getInputStream(), COMPRESSED_BODY_BUFFER_SIZE);
+        if ("deflate".equalsIgnoreCase(contentEncoding))
+            return new InflaterInputStream(httpServletRequest.getInputStream(), new Inflater(), COMPRESSED_BODY_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+
+        throw new RuntimeException(String.format("Unsupported Content-Encoding %s. Send the case file uncompressed, or compressed with gzip or deflate.", StringEscapeUtils.escapeHtml3(contentEncoding)));
+    }
+
+    // GET (or HEAD) /api/v1/result/{sha256}: result of case file validated earlier, 404 when it is not known (anymore)
+    private void handlerApiV1Result(String target, Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        if ((!"GET".equals(jettyRequest.getMethod())) && (!"HEAD".equals(jettyRequest.getMethod())))
+            throw new RuntimeException("Make GET (or HEAD) request with SHA-256 of case file content, e.g. /api/v1/result/{sha256}");
+
+        String contentHash = StringUtils.lowerCase(StringUtils.removeStart(target, "/api/v1/result/"));
+        if (!SHA256_PATTERN.matcher(contentHash).matches())
+            throw new RuntimeException(String.format("Invalid SHA-256 %s", StringEscapeUtils.escapeHtml3(contentHash)));
+
+        ValidationResult validationResult = lookupResult(contentHash);
+        if (validationResult == null) {
+            httpServletResponse.sendError(HttpServletResponse.SC_NOT_FOUND, "Error: Result not found. Validate the case file with POST /api/v1/validate");
+            return;
+        }
+
+        // HTTP caches (and clients) revalidate with ETag
+        httpServletResponse.setHeader("ETag", toEntityTag(contentHash));
+        httpServletResponse.setHeader("Cache-Control", "no-cache");
+        if (parseEntityTags(httpServletRequest.getHeader("If-None-Match")).contains(contentHash)) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        writeResult(httpServletResponse, contentHash, validationResult, !"HEAD".equals(jettyRequest.getMethod()));
+    }
+
+    // null - result is not known
+    private static ValidationResult lookupResult(String contentHash) {
+        ValidationResultCache resultCache = CaseFileValidator.resultCache;
+        if (resultCache == null) return null;
+        return resultCache.lookup(contentHash, BaseCaseFileValidator.getValidators()).orElse(null);
+    }
+
+    private static void writeResult(HttpServletResponse httpServletResponse, String contentHash, ValidationResult validationResult, boolean bodyFlag) throws IOException {
+        httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+        httpServletResponse.setHeader("ETag", toEntityTag(contentHash));
+        httpServletResponse.setContentType("application/json;charset=utf-8");
+        if (bodyFlag) httpServletResponse.getWriter().println(gson.toJson(ValidationResultResponse.of(validationResult)));
+    }
+
+    private static String toEntityTag(String contentHash) {
+        return "\"" + contentHash + "\"";
+    }
+
+    // SHA-256 values (lower case) of If-None-Match header, e.g. '"e3b0...", W/"9f86..."', other tags are ignored
+    private static List<String> parseEntityTags(String ifNoneMatch) {
+        List<String> contentHashes = new ArrayList<>();
+        if (StringUtils.isBlank(ifNoneMatch)) return contentHashes;
+
+        for (String entityTag : StringUtils.split(ifNoneMatch, ',')) {
+            String contentHash = StringUtils.lowerCase(StringUtils.strip(StringUtils.removeStart(StringUtils.trim(entityTag), "W/"), "\""));
+            if (SHA256_PATTERN.matcher(contentHash).matches()) contentHashes.add(contentHash);
+        }
+        return contentHashes;
+    }
+
+    // hit/miss counters of result cache
+    private void handlerApiV1Cache(HttpServletResponse httpServletResponse) throws IOException {
+        ValidationResultCache resultCache = CaseFileValidator.resultCache;
+
+        JsonObject cacheResponseObject = new JsonObject();
+        cacheResponseObject.addProperty("enabled", resultCache != null);
+        if (resultCache != null) {
+            cacheResponseObject.addProperty("hits", resultCache.getHits());
+            cacheResponseObject.addProperty("diskHits", resultCache.getDiskHits());
+            cacheResponseObject.addProperty("misses", resultCache.getMisses());
+            cacheResponseObject.addProperty("memoryEntries", resultCache.getMemoryEntries());
         }
 
         httpServletResponse.setStatus(HttpServletResponse.SC_OK);
         httpServletResponse.setContentType("application/json;charset=utf-8");
-        httpServletResponse.getWriter().println(gson.toJson(validationResultResponseObject));
+        httpServletResponse.getWriter().println(gson.toJson(cacheResponseObject));
+    }
+
+    // many case files in one request: multipart upload with many 'casefile' parts, or ZIP archive in the body of the request
+    // case files are validated concurrently on validation executor, results (keyed by case file name) are written as they complete
+    // as NDJSON (when requested by Accept header) or as one JSON object
+    private void handlerApiV1ValidateBatch(Request jettyRequest, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException, InterruptedException {
+        if (!"POST".equals(jettyRequest.getMethod()))
+            throw new RuntimeException("Make POST request with case files (multipart 'casefile' parts) or ZIP archive in the body of the request.");
+
+        long contentLength = jettyRequest.getContentLengthLong();
+        if (contentLength > BATCH_SIZE_LIMIT + MULTIPART_OVERHEAD_LIMIT)
+            throw new RuntimeException(String.format("Batch is too large. Limit %s", FileUtils.byteCountToDisplaySize(BATCH_SIZE_LIMIT)));
+
+        ValidationBatchResponseWriter responseWriter = new ValidationBatchResponseWriter(
+                httpServletResponse,
+                StringUtils.contains(httpServletRequest.getHeader("Accept"), ValidationBatchResponseWriter.NDJSON_CONTENT_TYPE)
+        );
+        Consumer<ValidationResult> resultConsumer = validationResult -> {
+            try {
+                responseWriter.write(validationResult);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        };
+
+        ValidationBatch validationBatch = new ValidationBatch(validationExecutor, this::validate, caseFileSource -> memoryBudget.release(caseFileSource.getMemoryReserved()));
+        try {
+            if (isMultipartRequest(jettyRequest)) {
+                jettyRequest.setAttribute(Request.__MULTIPART_CONFIG_ELEMENT, MULTI_PART_BATCH_CONFIG);
+                try {
+                    List<CaseFileSource> caseFileSources = new ArrayList<>();
+                    for (Part part : getBatchParts(jettyRequest)) {
+                        if (!"casefile".equals(part.getName())) continue;
+
+                        String caseFileName = StringUtils.defaultIfBlank(part.getSubmittedFileName(), String.format("casefile#%d", caseFileSources.size() + 1));
+                        caseFileSources.add(CaseFileSource.ofByteSource(caseFileName, part.getSize(), new ByteSource() {
+                            @Override
+                            public InputStream openStream() throws IOException {
+                                return part.getInputStream();
+                            }
+
+                            @Override
+                            public Optional<Long> sizeIfKnown() {
+                                return Optional.of(part.getSize());
+                            }
+                        }));
+                    }
+                    validationBatch.validate(caseFileSources.iterator(), resultConsumer);
+                } finally {
+                    //clear any temporary file
+                    deleteParts(jettyRequest);
+                }
+            } else {
+                // archive is read as it is uploaded, overall size of (decompressed) entries is limited too
+                // entries read ahead (up to one per validation thread) are counted in memory budget
+                InputStream bodyStream = new SizeLimitedInputStream(getBodyStream(httpServletRequest), BATCH_SIZE_LIMIT, "Batch is too large. Limit %s");
+                Iterator<CaseFileSource> caseFileSources = CaseFileArchive.entries("(request body)", CaseFileArchive.ArchiveType.ZIP, bodyStream, this::readEntry);
+                long[] batchSize = new long[1];
+                validationBatch.validate(Iterators.transform(caseFileSources, caseFileSource -> {
+                    batchSize[0] += caseFileSource.getSize();
+                    if (batchSize[0] > BATCH_SIZE_LIMIT) {
+                        memoryBudget.release(caseFileSource.getMemoryReserved());
+                        throw new RuntimeException(String.format("Batch is too large. Limit %s", FileUtils.byteCountToDisplaySize(BATCH_SIZE_LIMIT)));
+                    }
+                    return caseFileSource;
+                }), resultConsumer);
+            }
+        } catch (UncheckedIOException exception) {
+            // response cannot be written (e.g. client disconnected), the rest of batch is not validated
+            throw exception.getCause();
+        } catch (RuntimeException exception) {
+            // status is sent already with first result
+            if (!responseWriter.isStarted()) throw exception;
+
+            String errorMessage = String.format("Error: %s", exception.getMessage());
+            logger.error(errorMessage, exception);
+            responseWriter.writeError(errorMessage);
+        }
+
+        if (!responseWriter.isStarted())
+            throw new RuntimeException("No case file provided. Make POST request with case files (multipart 'casefile' parts) or ZIP archive in the body of the request.");
+
+        responseWriter.finish();
     }
 
 }
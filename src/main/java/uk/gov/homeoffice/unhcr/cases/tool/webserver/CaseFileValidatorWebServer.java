@@ -2,12 +2,29 @@ package uk.gov.homeoffice.unhcr.cases.tool.webserver;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResultCache;
+
+import java.util.concurrent.ThreadFactory;
 
 public class CaseFileValidatorWebServer {
 
     //curl -X POST --data-binary @src/test/resources/uk/gov/homeoffice/unhcr/cases/test/V4-TEST-CrossReference.xml "http://0.0.0.0:8080/json"
 
+    // number of validations running at the same time (0 - number of CPUs)
+    static public int validationThreads = 0;
+
+    // validation requests waiting for a thread, further requests get 503 (Service Unavailable)
+    static public int validationQueueSize = CaseFileValidatorHandler.DEFAULT_VALIDATION_QUEUE_SIZE;
+
     static public void start(int webServerPort) throws Exception {
+        start(webServerPort, false);
+    }
+
+    static public void start(int webServerPort, boolean virtualThreadsFlag) throws Exception {
         String jvmVersion = StringUtils.defaultString(System.getProperty("java.version"), "N/A");
         if (
                 (jvmVersion.startsWith("1."))||
@@ -21,8 +38,30 @@ public class CaseFileValidatorWebServer {
             System.exit(1);
         }
 
-        Server server = new Server(webServerPort);
-        server.setHandler(new CaseFileValidatorHandler());
+        // resubmitted case files are not validated again
+        if (CaseFileValidator.resultCache == null) CaseFileValidator.resultCache = new ValidationResultCache(null);
+
+        int threads = (validationThreads > 0) ? validationThreads : Runtime.getRuntime().availableProcessors();
+
+        // with virtual threads, slow clients (uploads, downloads) do not hold platform threads of pool,
+        // validations run on virtual threads too, at most --threads (number of CPUs) at once (the rest waits in validation queue)
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        CaseFileValidatorHandler validatorHandler = null;
+        if (virtualThreadsFlag) {
+            if (VirtualThreads.areSupported()) {
+                threadPool.setVirtualThreadsExecutor(VirtualThreads.getDefaultVirtualThreadsExecutor());
+                validatorHandler = new CaseFileValidatorHandler(threads, validationQueueSize, createVirtualThreadFactory("validation-"));
+            } else {
+                System.out.println("Virtual threads are not supported (Java version 21 (or higher) is required, or 19-20 with --enable-preview), platform threads are used.");
+            }
+        }
+        if (validatorHandler == null) validatorHandler = new CaseFileValidatorHandler(threads, validationQueueSize);
+
+        Server server = new Server(threadPool);
+        ServerConnector portConnector = new ServerConnector(server);
+        portConnector.setPort(webServerPort);
+        server.addConnector(portConnector);
+        server.setHandler(createGzipHandler(validatorHandler));
 
         //enable multi-part forms (for file upload)
         HttpConfiguration httpConfig = new HttpConfiguration();
@@ -34,4 +73,22 @@ public class CaseFileValidatorWebServer {
         server.start();
         server.join();
     }
+
+    // responses are compressed for clients accepting gzip (POST results too), flushed NDJSON lines are sent right away
+    // compressed request bodies are decompressed by handler itself (size limit applies to decompressed case file)
+    static GzipHandler createGzipHandler(Handler handler) {
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setIncludedMethods("GET", "POST");
+        gzipHandler.setSyncFlush(true);
+        gzipHandler.setHandler(handler);
+        return gzipHandler;
+    }
+
+    // Thread.ofVirtual().name(prefix, 1).factory(), resolved by reflection (build targets Java 8), see VirtualThreads.areSupported()
+    private static ThreadFactory createVirtualThreadFactory(String namePrefix) throws ReflectiveOperationException {
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    }
 }
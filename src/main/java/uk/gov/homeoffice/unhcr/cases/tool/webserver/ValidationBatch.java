@@ -0,0 +1,145 @@
+package uk.gov.homeoffice.unhcr.cases.tool.webserver;
+
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileSource;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// validates case files of one batch request concurrently on (shared) validation executor of web server
+// request thread reads case files and waits for results, validations run only on executor threads (which bound CPU use)
+// when executor queue is full, next case file waits till one of batch's own validations completes,
+// batch which has nothing validated (or in flight) yet is rejected (RejectedExecutionException)
+class ValidationBatch {
+
+    // batch already started waits this long for free place in executor queue (when it has no validation in flight)
+    final static private long QUEUE_RETRY_MILLIS = 50;
+
+    final private ThreadPoolExecutor validationExecutor;
+
+    final private Function<CaseFileSource, ValidationResult> validation;
+
+    // case files taken from iterator, but not validated (e.g. batch over limit), e.g. to release memory reserved for them
+    // every case file is passed either to validation or here, once
+    final private Consumer<CaseFileSource> discarded;
+
+    // case files (taken from iterator) submitted at once, bounds memory held by entries read ahead
+    final private int windowSize;
+
+    ValidationBatch(ThreadPoolExecutor validationExecutor, Function<CaseFileSource, ValidationResult> validation) {
+        this(validationExecutor, validation, caseFileSource -> {});
+    }
+
+    ValidationBatch(ThreadPoolExecutor validationExecutor, Function<CaseFileSource, ValidationResult> validation, Consumer<CaseFileSource> discarded) {
+        this.validationExecutor = validationExecutor;
+        this.validation = validation;
+        this.discarded = discarded;
+        this.windowSize = validationExecutor.getMaximumPoolSize();
+    }
+
+    // case file is claimed by validation (when task runs) or by discard (when task is cancelled), whichever comes first
+    private static class ClaimedSource {
+
+        final private CaseFileSource caseFileSource;
+
+        final private AtomicBoolean claimed = new AtomicBoolean();
+
+        ClaimedSource(CaseFileSource caseFileSource) {
+            this.caseFileSource = caseFileSource;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    // results are passed to consumer (on calling thread) as they complete
+    void validate(Iterator<CaseFileSource> caseFileSources, Consumer<ValidationResult> resultConsumer) throws InterruptedException {
+        BlockingQueue<Future<ValidationResult>> completedTasks = new LinkedBlockingQueue<>();
+
+        // submitted to executor, not completed yet
+        Deque<FutureTask<ValidationResult>> submittedTasks = new ArrayDeque<>();
+        // not claimed by validation yet
+        Deque<ClaimedSource> pendingSources = new ArrayDeque<>();
+        // rejected by full executor, submitted again later
+        FutureTask<ValidationResult> rejectedTask = null;
+        int inFlight = 0;
+        int completed = 0;
+
+        try {
+            while (true) {
+                while (inFlight < windowSize) {
+                    FutureTask<ValidationResult> task;
+                    if (rejectedTask != null) {
+                        task = rejectedTask;
+                        rejectedTask = null;
+                    } else if (caseFileSources.hasNext()) {
+                        ClaimedSource claimedSource = new ClaimedSource(caseFileSources.next());
+                        pendingSources.add(claimedSource);
+                        task = new FutureTask<ValidationResult>(() -> {
+                            // cancelled task may still be run (taken by executor thread before it was cancelled)
+                            if (!claimedSource.claim()) throw new CancellationException();
+                            return validation.apply(claimedSource.caseFileSource);
+                        }) {
+                            @Override
+                            protected void done() {
+                                completedTasks.add(this);
+                            }
+                        };
+                    } else {
+                        break;
+                    }
+
+                    try {
+                        validationExecutor.execute(task);
+                        submittedTasks.add(task);
+                        inFlight++;
+                    } catch (RejectedExecutionException exception) {
+                        if ((inFlight == 0) && (completed == 0)) throw exception;
+                        rejectedTask = task;
+                        break;
+                    }
+                }
+
+                if (inFlight == 0) {
+                    if (rejectedTask == null) break;
+                    Thread.sleep(QUEUE_RETRY_MILLIS);
+                    continue;
+                }
+
+                Future<ValidationResult> completedTask = completedTasks.take();
+                inFlight--;
+                completed++;
+                submittedTasks.remove(completedTask);
+                pendingSources.removeIf(claimedSource -> claimedSource.claimed.get());
+
+                resultConsumer.accept(getResult(completedTask));
+            }
+        } finally {
+            // e.g. batch over limit, results are not needed anymore
+            for (FutureTask<ValidationResult> task : submittedTasks) {
+                validationExecutor.remove(task);
+                task.cancel(false);
+            }
+            for (ClaimedSource claimedSource : pendingSources) {
+                if (claimedSource.claim()) discarded.accept(claimedSource.caseFileSource);
+            }
+        }
+    }
+
+    private static ValidationResult getResult(Future<ValidationResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            // validation catches exceptions, so it is an unexpected error (e.g. OutOfMemoryError)
+            ValidationResult validationResult = new ValidationResult();
+            validationResult.addError(exception.getCause().toString());
+            return validationResult;
+        }
+    }
+}
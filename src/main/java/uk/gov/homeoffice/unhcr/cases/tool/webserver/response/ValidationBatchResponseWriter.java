@@ -0,0 +1,97 @@
+package uk.gov.homeoffice.unhcr.cases.tool.webserver.response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// writes batch results as they complete, so whole batch result is never held in memory
+// NDJSON: one ValidationResultResponse per line, flushed at once
+// JSON: one object {"results": [...], "success": ...}, success is known (and written) after the last result
+// response is started (status and content type) by first result, so errors before it can still be reported by status
+public class ValidationBatchResponseWriter {
+
+    final static public String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    final static private Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    final private HttpServletResponse httpServletResponse;
+
+    final private boolean ndjsonFlag;
+
+    private PrintWriter writer;
+
+    private JsonWriter jsonWriter;
+
+    private boolean success = true;
+
+    public ValidationBatchResponseWriter(HttpServletResponse httpServletResponse, boolean ndjsonFlag) {
+        this.httpServletResponse = httpServletResponse;
+        this.ndjsonFlag = ndjsonFlag;
+    }
+
+    public boolean isStarted() {
+        return writer != null;
+    }
+
+    public void write(ValidationResult validationResult) throws IOException {
+        start();
+        if (validationResult.isFailure()) success = false;
+        write(ValidationResultResponse.of(validationResult));
+    }
+
+    // error after some results were written (e.g. batch over limit), it is the last result
+    public void writeError(String error) throws IOException {
+        start();
+        success = false;
+
+        ValidationResultResponse validationResultResponse = new ValidationResultResponse();
+        validationResultResponse.setSuccess(false);
+        validationResultResponse.setErrors(new String[] { error });
+        write(validationResultResponse);
+    }
+
+    public void finish() throws IOException {
+        start();
+        if (!ndjsonFlag) {
+            jsonWriter.endArray();
+            jsonWriter.name("success").value(success);
+            jsonWriter.endObject();
+            jsonWriter.flush();
+            writer.println();
+        }
+        writer.flush();
+        if (writer.checkError()) throw new IOException("Cannot write response (client disconnected?)");
+    }
+
+    private void start() throws IOException {
+        if (writer != null) return;
+
+        httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+        httpServletResponse.setContentType((ndjsonFlag ? NDJSON_CONTENT_TYPE : "application/json") + ";charset=utf-8");
+        writer = httpServletResponse.getWriter();
+
+        if (!ndjsonFlag) {
+            jsonWriter = new JsonWriter(writer);
+            jsonWriter.setIndent("  ");
+            jsonWriter.setHtmlSafe(false);
+            jsonWriter.beginObject();
+            jsonWriter.name("results").beginArray();
+        }
+    }
+
+    private void write(ValidationResultResponse validationResultResponse) throws IOException {
+        if (ndjsonFlag) {
+            gson.toJson(validationResultResponse, ValidationResultResponse.class, writer);
+            writer.write('\n');
+            writer.flush();
+            if (writer.checkError()) throw new IOException("Cannot write response (client disconnected?)");
+        } else {
+            gson.toJson(validationResultResponse, ValidationResultResponse.class, jsonWriter);
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package uk.gov.homeoffice.unhcr.cases.tool.webserver.response;
 
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+
+import java.util.Arrays;
+
 public class ValidationResultResponse {
 
+    // set only for batch results (null values are not serialised)
+    private String fileName;
+
     private boolean success;
 
     private String validatorId;
@@ -10,6 +17,34 @@ public class ValidationResultResponse {
 
     private String[] warnings;
 
+    public static ValidationResultResponse of(ValidationResult validationResult) {
+        ValidationResultResponse validationResultResponse = new ValidationResultResponse();
+        validationResultResponse.setFileName(validationResult.getFileName());
+        validationResultResponse.setSuccess(validationResult.isSuccess());
+        validationResultResponse.setErrors(validationResult.getErrors().toArray(new String[0]));
+        validationResultResponse.setWarnings(validationResult.getWarnings().toArray(new String[0]));
+        validationResultResponse.setValidatorId(validationResult.getValidatorId());
+        return validationResultResponse;
+    }
+
+    // for results received from daemon (see CaseFileValidatorClient)
+    public ValidationResult toValidationResult() {
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setFileName(fileName);
+        validationResult.setValidator(validatorId, null);
+        if (errors != null) Arrays.stream(errors).forEach(validationResult::addError);
+        if (warnings != null) Arrays.stream(warnings).forEach(validationResult::addWarning);
+        return validationResult;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
     public String getValidatorId() {
         return validatorId;
     }
@@ -0,0 +1,8 @@
+package uk.gov.homeoffice.unhcr.exception;
+
+public class MemoryBudgetExceededException extends RuntimeException {
+
+    public MemoryBudgetExceededException(String message) {
+        super(message, null);
+    }
+}
@@ -0,0 +1,136 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseFileArchiveTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+    }
+
+    @Test
+    void validateZipTest() throws Exception {
+        File archiveFile = new File(tempDir, "cases.zip");
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(archiveFile))) {
+            zipOutputStream.putNextEntry(new ZipEntry("cases/"));
+            zipOutputStream.putNextEntry(new ZipEntry("cases/V4-TEST.xml"));
+            zipOutputStream.write(loadResource("V4-TEST.xml"));
+            zipOutputStream.putNextEntry(new ZipEntry("V4-TEST-CrossReference.xml"));
+            zipOutputStream.write(loadResource("V4-TEST-CrossReference.xml"));
+        }
+
+        List<ValidationResult> validationResults = validateArchive(archiveFile);
+
+        assertThat(validationResults.stream().map(ValidationResult::getFileName).collect(Collectors.toList())).containsExactly(
+                archiveFile.getPath() + "!/cases/V4-TEST.xml",
+                archiveFile.getPath() + "!/V4-TEST-CrossReference.xml"
+        );
+        assertThat(validationResults.stream().map(ValidationResult::isSuccess).collect(Collectors.toList())).containsExactly(true, false);
+    }
+
+    @Test
+    void validateTarGzTest() throws Exception {
+        File archiveFile = new File(tempDir, "cases.tar.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(archiveFile))) {
+            writeTarEntry(outputStream, "cases/", '5', new byte[0]);
+            writeTarEntry(outputStream, "cases/V3-TEST.xml", '0', loadResource("V3-TEST.xml"));
+            writeTarEntry(outputStream, "cases/V4-TEST.xml", '0', loadResource("V4-TEST.xml"));
+            outputStream.write(new byte[1024]);
+        }
+
+        List<ValidationResult> validationResults = validateArchive(archiveFile);
+
+        assertThat(validationResults.stream().map(ValidationResult::getFileName).collect(Collectors.toList())).containsExactly(
+                archiveFile.getPath() + "!/cases/V3-TEST.xml",
+                archiveFile.getPath() + "!/cases/V4-TEST.xml"
+        );
+        assertThat(validationResults.stream().allMatch(ValidationResult::isSuccess)).isTrue();
+    }
+
+    @Test
+    void validateGzTest() throws Exception {
+        File archiveFile = new File(tempDir, "V4-TEST.xml.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(archiveFile))) {
+            outputStream.write(loadResource("V4-TEST.xml"));
+        }
+
+        List<ValidationResult> validationResults = validateArchive(archiveFile);
+
+        assertThat(validationResults).hasSize(1);
+        assertThat(validationResults.get(0).getFileName()).isEqualTo(archiveFile.getPath() + "!/V4-TEST.xml");
+        assertThat(validationResults.get(0).isSuccess()).isTrue();
+    }
+
+    @Test
+    void expandCorruptedArchiveTest() throws IOException {
+        File archiveFile = new File(tempDir, "corrupted.tar.gz");
+        try (OutputStream outputStream = new FileOutputStream(archiveFile)) {
+            outputStream.write("not gzip".getBytes(StandardCharsets.UTF_8));
+        }
+        File caseFile = new File(tempDir, "case.xml");
+
+        List<CaseFileSource> caseFileSources = Lists.newArrayList(CaseFileArchive.expand(Lists.newArrayList(archiveFile, caseFile).iterator()));
+
+        assertThat(caseFileSources.stream().map(CaseFileSource::getName).collect(Collectors.toList())).containsExactly(archiveFile.getPath(), caseFile.getPath());
+        assertThat(new CaseFileValidator().validate(caseFileSources.get(0).getByteSource(), BaseCaseFileValidator.getValidators()).isFailure()).isTrue();
+    }
+
+    // the same way as command line and inbox validate archives
+    private List<ValidationResult> validateArchive(File archiveFile) throws InterruptedException {
+        List<ValidationResult> validationResults = new ArrayList<>();
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+        batchValidator.validate(CaseFileArchive.expand(Lists.newArrayList(archiveFile).iterator()), validationResults::add);
+        return validationResults;
+    }
+
+    private byte[] loadResource(String resourceName) throws IOException {
+        return IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/" + resourceName, getClass().getClassLoader());
+    }
+
+    private void writeTarEntry(OutputStream outputStream, String name, char type, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        writeTarField(header, 0, name);
+        writeTarField(header, 100, "0000644");
+        writeTarField(header, 124, String.format("%011o", content.length));
+        writeTarField(header, 136, String.format("%011o", 0));
+        header[156] = (byte) type;
+        writeTarField(header, 257, "ustar");
+        writeTarField(header, 263, "00");
+
+        // checksum is calculated with checksum field filled with spaces
+        for (int index = 148; index < 156; index++) header[index] = ' ';
+        int checksum = 0;
+        for (byte value : header) checksum += (value & 0xff);
+        writeTarField(header, 148, String.format("%06o", checksum));
+
+        outputStream.write(header);
+        outputStream.write(content);
+        outputStream.write(new byte[(512 - (content.length % 512)) % 512]);
+    }
+
+    private void writeTarField(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
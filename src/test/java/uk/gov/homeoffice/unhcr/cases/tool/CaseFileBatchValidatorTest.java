@@ -0,0 +1,95 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseFileBatchValidatorTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+    }
+
+    @Test
+    void validateSubmissionOrderTest() throws Exception {
+        List<File> caseFiles = createCaseFiles();
+
+        for (int threads : new int[] { 1, 4 }) {
+            List<ValidationResult> validationResults = Collections.synchronizedList(new ArrayList<>());
+            CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), threads, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+
+            int failures = batchValidator.validate(caseFiles, validationResults::add);
+
+            assertThat(failures).isEqualTo(2);
+            assertThat(validationResults.stream().map(ValidationResult::getFileName).collect(Collectors.toList()))
+                    .containsExactlyElementsOf(caseFiles.stream().map(File::getPath).collect(Collectors.toList()));
+            assertThat(validationResults.stream().map(ValidationResult::isSuccess).collect(Collectors.toList()))
+                    .containsExactly(true, false, true, false);
+        }
+    }
+
+    @Test
+    void validateCompletionOrderTest() throws Exception {
+        List<File> caseFiles = createCaseFiles();
+
+        List<ValidationResult> validationResults = Collections.synchronizedList(new ArrayList<>());
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 4, CaseFileBatchValidator.OutputOrder.COMPLETION);
+
+        int failures = batchValidator.validate(caseFiles, validationResults::add);
+
+        assertThat(failures).isEqualTo(2);
+        assertThat(validationResults.stream().map(ValidationResult::getFileName).collect(Collectors.toList()))
+                .containsExactlyInAnyOrderElementsOf(caseFiles.stream().map(File::getPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    void validateManifestWriteFailureTest() throws Exception {
+        List<File> caseFiles = createCaseFiles();
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+
+        // closed manifest cannot be written, results are still reported
+        ValidationManifest validationManifest = new ValidationManifest(new File(tempDir, "manifest.jsonl"), validators);
+        validationManifest.close();
+
+        for (int threads : new int[] { 1, 4 }) {
+            List<ValidationResult> validationResults = Collections.synchronizedList(new ArrayList<>());
+            CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, threads, CaseFileBatchValidator.OutputOrder.COMPLETION);
+            batchValidator.setValidationManifest(validationManifest);
+
+            int failures = batchValidator.validate(caseFiles, validationResults::add);
+
+            assertThat(failures).isEqualTo(2);
+            assertThat(validationResults.stream().map(ValidationResult::getFileName).collect(Collectors.toList()))
+                    .containsExactlyInAnyOrderElementsOf(caseFiles.stream().map(File::getPath).collect(Collectors.toList()));
+        }
+    }
+
+    private List<File> createCaseFiles() throws IOException {
+        List<File> caseFiles = new ArrayList<>();
+        for (String resourceName : Arrays.asList("V3-TEST.xml", "V4-TEST-CrossReference.xml", "V4-TEST.xml")) {
+            File caseFile = new File(tempDir, resourceName);
+            FileUtils.writeByteArrayToFile(caseFile, IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/" + resourceName, getClass().getClassLoader()));
+            caseFiles.add(caseFile);
+        }
+        caseFiles.add(new File(tempDir, "missing.xml"));
+        return caseFiles;
+    }
+}
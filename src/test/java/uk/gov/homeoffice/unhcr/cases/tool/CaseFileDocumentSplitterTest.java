@@ -0,0 +1,67 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CaseFileDocumentSplitterTest {
+
+    @Test
+    void splitConcatenatedTest() throws IOException {
+        String first = "<?xml version=\"1.0\"?>\n<!-- <UNHCR_RRF> -->\n<UNHCR_RRF a=\"x>y\"><CASE><![CDATA[</CASE>]]]></CASE><CASE/></UNHCR_RRF>";
+        String second = "<UNHCR_RRF/>";
+        String third = "<!DOCTYPE UNHCR_RRF [<!ENTITY e \"<e>\">]><UNHCR_RRF>&e;</UNHCR_RRF>";
+
+        List<CaseFileSource> caseFileSources = split(first + "\n" + second + third + "\n\n");
+
+        assertThat(caseFileSources.stream().map(CaseFileSource::getName).collect(Collectors.toList())).containsExactly("stdin#1", "stdin#2", "stdin#3");
+        assertThat(read(caseFileSources.get(0))).isEqualTo(first);
+        assertThat(read(caseFileSources.get(1))).isEqualTo(second);
+        assertThat(read(caseFileSources.get(2))).isEqualTo(third);
+    }
+
+    @Test
+    void splitEmptyCommentTest() throws IOException {
+        String first = "<!----><UNHCR_RRF><!----><CASE/><!-- - --></UNHCR_RRF>";
+        String second = "<?pi?><UNHCR_RRF><![CDATA[]]></UNHCR_RRF>";
+        // malformed comment, following documents are still split
+        String third = "<UNHCR_RRF><!-x></UNHCR_RRF>";
+        String fourth = "<UNHCR_RRF/>";
+
+        List<CaseFileSource> caseFileSources = split(first + second + third + fourth);
+
+        assertThat(caseFileSources).hasSize(4);
+        assertThat(read(caseFileSources.get(0))).isEqualTo(first);
+        assertThat(read(caseFileSources.get(1))).isEqualTo(second);
+        assertThat(read(caseFileSources.get(2))).isEqualTo(third);
+        assertThat(read(caseFileSources.get(3))).isEqualTo(fourth);
+    }
+
+    @Test
+    void splitLengthPrefixedTest() throws IOException {
+        // length-prefixed content does not have to be complete xml
+        List<CaseFileSource> caseFileSources = split("5\n<A><B\r\n<C/>\n7\n<D></D>10\n<E>");
+
+        assertThat(caseFileSources).hasSize(4);
+        assertThat(read(caseFileSources.get(0))).isEqualTo("<A><B");
+        assertThat(read(caseFileSources.get(1))).isEqualTo("<C/>");
+        assertThat(read(caseFileSources.get(2))).isEqualTo("<D></D>");
+        assertThatThrownBy(() -> read(caseFileSources.get(3))).hasMessageStartingWith("Unexpected end of input");
+    }
+
+    private static List<CaseFileSource> split(String input) {
+        return Lists.newArrayList(new CaseFileDocumentSplitter(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), "stdin"));
+    }
+
+    private static String read(CaseFileSource caseFileSource) throws IOException {
+        return caseFileSource.getByteSource().asCharSource(StandardCharsets.UTF_8).read();
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.io.ByteSource;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseFileFormatTest {
+
+    @AfterEach
+    void tearDown() {
+        CaseFileFormat.sniffPrefixSize = 64 * 1024;
+        CaseFileFormat.lateMarkersFallbackFlag = true;
+    }
+
+    @Test
+    void detectV3Test() throws IOException {
+        byte[] bytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V3-TEST.xml", getClass().getClassLoader());
+
+        assertDetected(bytes, true, false);
+    }
+
+    @Test
+    void detectV4Test() throws IOException {
+        byte[] bytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", getClass().getClassLoader());
+
+        assertDetected(bytes, true, true);
+    }
+
+    @Test
+    void detectLateMarkersTest() throws IOException {
+        CaseFileFormat.sniffPrefixSize = 1024;
+
+        //markers appear after the prefix (and cross read buffer boundaries)
+        byte[] bytes = (StringUtils.repeat(' ', 1020) + "<UNHCR_RRF>" + StringUtils.repeat(' ', 3000) + "<IndividualGUID>").getBytes(StandardCharsets.UTF_8);
+
+        assertDetected(bytes, true, true);
+
+        CaseFileFormat.lateMarkersFallbackFlag = false;
+
+        assertDetected(bytes, false, false);
+    }
+
+    @Test
+    void detectNotCaseFileTest() throws IOException {
+        assertDetected("<html></html>".getBytes(StandardCharsets.UTF_8), false, false);
+        assertDetected(new byte[0], false, false);
+    }
+
+    private void assertDetected(byte[] bytes, boolean rootElementFound, boolean individualGuidFound) throws IOException {
+        for (CaseFileFormat caseFileFormat : new CaseFileFormat[] { CaseFileFormat.detect(bytes), CaseFileFormat.detect(ByteSource.wrap(bytes)) }) {
+            assertThat(caseFileFormat.isRootElementFound()).isEqualTo(rootElementFound);
+            assertThat(caseFileFormat.isIndividualGuidFound()).isEqualTo(individualGuidFound);
+        }
+    }
+}
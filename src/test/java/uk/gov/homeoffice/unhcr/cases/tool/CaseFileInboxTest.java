@@ -0,0 +1,94 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CaseFileInboxTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+    }
+
+    @Test
+    void processTest() throws Exception {
+        File inbox = new File(tempDir, "inbox");
+        File accepted = new File(tempDir, "accepted");
+        File rejected = new File(tempDir, "rejected");
+        copyResource("V4-TEST.xml", new File(inbox, "pass.xml"));
+        copyResource("V4-TEST-CrossReference.xml", new File(inbox, "partner/fail.xml"));
+
+        List<ValidationResult> validationResults = Collections.synchronizedList(new ArrayList<>());
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 2, CaseFileBatchValidator.OutputOrder.COMPLETION);
+        int failures = new CaseFileInbox(inbox, accepted, rejected, batchValidator, ValidationResultWriter.Format.JSONL).process(validationResults::add);
+
+        assertThat(failures).isEqualTo(1);
+        assertThat(validationResults).hasSize(2);
+        assertThat(FileUtils.listFiles(inbox, null, true)).isEmpty();
+        assertThat(new File(accepted, "pass.xml")).exists();
+        assertThat(new File(rejected, "partner/fail.xml")).exists();
+        assertThat(FileUtils.readFileToString(new File(rejected, "partner/fail.xml.result.json"), StandardCharsets.UTF_8)).contains("\"success\":false", "Duplicated");
+    }
+
+    @Test
+    void processEmptyArchiveTest() throws Exception {
+        File inbox = new File(tempDir, "inbox");
+        File accepted = new File(tempDir, "accepted");
+        File rejected = new File(tempDir, "rejected");
+        // end of central directory record only
+        byte[] emptyZip = new byte[22];
+        emptyZip[0] = 'P'; emptyZip[1] = 'K'; emptyZip[2] = 5; emptyZip[3] = 6;
+        FileUtils.writeByteArrayToFile(new File(inbox, "empty.zip"), emptyZip);
+
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.COMPLETION);
+        int failures = new CaseFileInbox(inbox, accepted, rejected, batchValidator, ValidationResultWriter.Format.JSONL).process(validationResult -> {});
+
+        assertThat(failures).isEqualTo(1);
+        assertThat(new File(accepted, "empty.zip")).doesNotExist();
+        assertThat(new File(rejected, "empty.zip")).exists();
+        assertThat(FileUtils.readFileToString(new File(rejected, "empty.zip.result.json"), StandardCharsets.UTF_8)).contains("\"success\":false", "nothing was validated");
+    }
+
+    @Test
+    void processDirectoryWithArchiveSeparatorTest() throws Exception {
+        File inbox = new File(tempDir, "inbox");
+        File accepted = new File(tempDir, "accepted");
+        File rejected = new File(tempDir, "rejected");
+        copyResource("V4-TEST.xml", new File(inbox, "foo!/pass.xml"));
+
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.COMPLETION);
+        int failures = new CaseFileInbox(inbox, accepted, rejected, batchValidator, ValidationResultWriter.Format.JSONL).process(validationResult -> {});
+
+        assertThat(failures).isEqualTo(0);
+        assertThat(new File(accepted, "foo!/pass.xml")).exists();
+    }
+
+    @Test
+    void processInsideInboxTest() {
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.COMPLETION);
+        assertThatThrownBy(() -> new CaseFileInbox(tempDir, new File(tempDir, "accepted"), new File(tempDir, "rejected"), batchValidator, ValidationResultWriter.Format.TEXT))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void copyResource(String resourceName, File file) throws IOException {
+        FileUtils.writeByteArrayToFile(file, IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/" + resourceName, getClass().getClassLoader()));
+    }
+}
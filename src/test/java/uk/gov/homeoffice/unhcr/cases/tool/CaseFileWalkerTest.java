@@ -0,0 +1,86 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CaseFileWalkerTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        for (String fileName : Arrays.asList("a.xml", "sub/b.xml", "sub/deep/c.xml", "sub/d.txt")) {
+            FileUtils.writeStringToFile(new File(tempDir, fileName), "<UNHCR_RRF/>", StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void expandDirectoryTest() {
+        assertThat(expand(tempDir.getPath())).containsExactlyInAnyOrder("a.xml", "sub/b.xml", "sub/deep/c.xml", "sub/d.txt");
+    }
+
+    @Test
+    void expandGlobTest() {
+        assertThat(expand(tempDir.getPath() + "/**/*.xml")).containsExactlyInAnyOrder("a.xml", "sub/b.xml", "sub/deep/c.xml");
+        assertThat(expand(tempDir.getPath() + "/*.xml")).containsExactlyInAnyOrder("a.xml");
+        assertThat(expand(tempDir.getPath() + "/sub/*.{xml,txt}")).containsExactlyInAnyOrder("sub/b.xml", "sub/d.txt");
+        assertThat(expand(tempDir.getPath() + "/*/deep/?.xml")).containsExactlyInAnyOrder("sub/deep/c.xml");
+        assertThat(expand(tempDir.getPath() + "/missing/*.xml")).containsExactly("missing");
+    }
+
+    @Test
+    void expandFileTest() {
+        assertThat(expand(new File(tempDir, "a.xml").getPath())).containsExactly("a.xml");
+        assertThat(expand(new File(tempDir, "missing.xml").getPath())).containsExactly("missing.xml");
+    }
+
+    @Test
+    void expandShardTest() {
+        List<String> allFiles = new ArrayList<>();
+        for (int index = 1; index <= 3; index++) {
+            CaseFileShard caseFileShard = CaseFileShard.parse(index + "/3");
+            List<String> shardFiles = Lists.newArrayList(CaseFileWalker.expand(Arrays.asList(tempDir.getPath(), tempDir.getPath() + "/**/*.xml").iterator(), caseFileShard)).stream()
+                    .map(file -> tempDir.toPath().relativize(file.toPath()).toString())
+                    .collect(Collectors.toList());
+
+            // assignment depends only on path relative to argument
+            assertThat(shardFiles.stream().allMatch(caseFileShard)).isTrue();
+            allFiles.addAll(shardFiles);
+        }
+
+        // every file is in exactly one shard (per argument)
+        assertThat(allFiles).containsExactlyInAnyOrder("a.xml", "sub/b.xml", "sub/deep/c.xml", "sub/d.txt", "a.xml", "sub/b.xml", "sub/deep/c.xml");
+
+        assertThatThrownBy(() -> CaseFileShard.parse("4/3")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CaseFileShard.parse("1")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void readFileListTest() {
+        assertThat(CaseFileWalker.readFileList(new StringReader("a.xml\nsub/b.xml\r\n\nlast.xml"))).toIterable().containsExactly("a.xml", "sub/b.xml", "last.xml");
+        assertThat(CaseFileWalker.readFileList(new StringReader("a.xml\0new\nline.xml\0"))).toIterable().containsExactly("a.xml", "new\nline.xml");
+        assertThat(CaseFileWalker.readFileList(new StringReader(""))).toIterable().isEmpty();
+    }
+
+    private List<String> expand(String argument) {
+        return Lists.newArrayList(CaseFileWalker.expand(Arrays.asList(argument))).stream()
+                .map(file -> tempDir.toPath().relativize(file.toPath()).toString())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,83 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseFileWatcherTest {
+
+    @TempDir
+    File tempDir;
+
+    private long debounceMillis;
+
+    @BeforeEach
+    void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+        debounceMillis = CaseFileWatcher.debounceMillis;
+        CaseFileWatcher.debounceMillis = 200;
+    }
+
+    @AfterEach
+    void cleanup() {
+        CaseFileWatcher.debounceMillis = debounceMillis;
+    }
+
+    @Test
+    void watchTest() throws Exception {
+        copyResource("V4-TEST.xml", new File(tempDir, "existing.xml"));
+
+        List<ValidationResult> validationResults = Collections.synchronizedList(new ArrayList<>());
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 2, CaseFileBatchValidator.OutputOrder.COMPLETION);
+        CaseFileWatcher caseFileWatcher = new CaseFileWatcher(tempDir, batchValidator, 2, validationResults::add);
+
+        CompletableFuture<Void> watching = CompletableFuture.runAsync(() -> {
+            try {
+                caseFileWatcher.watch();
+            } catch (Exception exception) {
+                throw new RuntimeException(exception);
+            }
+        });
+
+        try {
+            waitForResults(validationResults, 1);
+
+            // dropped into new sub-directory
+            copyResource("V4-TEST-CrossReference.xml", new File(tempDir, "inbox/dropped.xml"));
+            waitForResults(validationResults, 2);
+        } finally {
+            caseFileWatcher.stop();
+            watching.get();
+        }
+
+        assertThat(validationResults.stream().map(validationResult -> new File(validationResult.getFileName()).getName()).collect(Collectors.toList()))
+                .containsExactly("existing.xml", "dropped.xml");
+        assertThat(validationResults.stream().map(ValidationResult::isSuccess).collect(Collectors.toList()))
+                .containsExactly(true, false);
+    }
+
+    private void copyResource(String resourceName, File file) throws IOException {
+        FileUtils.writeByteArrayToFile(file, IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/" + resourceName, getClass().getClassLoader()));
+    }
+
+    private static void waitForResults(List<ValidationResult> validationResults, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ((validationResults.size() < count) && (System.currentTimeMillis() < deadline)) Thread.sleep(50);
+        assertThat(validationResults).hasSize(count);
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashingByteSourceTest {
+
+    final static private byte[] BYTES = "<case>content</case>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void hashSharedTest() throws IOException {
+        AtomicInteger openedStreams = new AtomicInteger();
+        HashingByteSource hashingByteSource = new HashingByteSource(countingSource(openedStreams));
+        assertThat(hashingByteSource.getHash()).isNull();
+
+        // e.g. manifest lookup, then result cache
+        String expectedHash = ValidationResultCache.hash(BYTES);
+        assertThat(hashingByteSource.hash(Hashing.sha256()).toString()).isEqualTo(expectedHash);
+        assertThat(hashingByteSource.hash(Hashing.sha256()).toString()).isEqualTo(expectedHash);
+        assertThat(hashingByteSource.getHash()).isEqualTo(expectedHash);
+        assertThat(openedStreams.get()).isEqualTo(1);
+    }
+
+    @Test
+    void hashReadContentTest() throws IOException {
+        AtomicInteger openedStreams = new AtomicInteger();
+        HashingByteSource hashingByteSource = new HashingByteSource(countingSource(openedStreams));
+
+        // content read by validator is hashed, hash is not computed by another read
+        assertThat(hashingByteSource.read()).isEqualTo(BYTES);
+        assertThat(hashingByteSource.hash(Hashing.sha256()).toString()).isEqualTo(ValidationResultCache.hash(BYTES));
+        assertThat(openedStreams.get()).isEqualTo(1);
+    }
+
+    @Test
+    void hashPartlyReadContentTest() throws IOException {
+        AtomicInteger openedStreams = new AtomicInteger();
+        HashingByteSource hashingByteSource = new HashingByteSource(countingSource(openedStreams));
+
+        // e.g. validator stopped at malformed xml
+        try (InputStream inputStream = hashingByteSource.openStream()) {
+            assertThat(inputStream.read(new byte[4])).isEqualTo(4);
+        }
+        assertThat(hashingByteSource.getHash()).isNull();
+
+        assertThat(hashingByteSource.hash(Hashing.sha256()).toString()).isEqualTo(ValidationResultCache.hash(BYTES));
+        assertThat(openedStreams.get()).isEqualTo(2);
+    }
+
+    private static ByteSource countingSource(AtomicInteger openedStreams) {
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                openedStreams.incrementAndGet();
+                return ByteSource.wrap(BYTES).openStream();
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.V4CaseFileValidator_1;
+import uk.gov.homeoffice.unhcr.exception.MemoryBudgetExceededException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MemoryBudgetTest {
+
+    @Test
+    void acquireTest() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(100);
+
+        long reserved = memoryBudget.acquire(80);
+        assertThat(memoryBudget.getAvailable()).isEqualTo(20);
+
+        // waits till memory is released
+        CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return memoryBudget.acquire(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThat(waiting.isDone()).isFalse();
+
+        memoryBudget.release(reserved);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(50);
+        assertThat(memoryBudget.getAvailable()).isEqualTo(50);
+
+        // cost over capacity runs alone
+        memoryBudget.release(50);
+        assertThat(memoryBudget.acquire(1000)).isEqualTo(100);
+    }
+
+    @Test
+    void acquireTimeoutTest() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(100);
+
+        // cost over capacity runs alone (on idle budget)
+        assertThat(memoryBudget.acquire(1000, 10)).isEqualTo(100);
+        assertThatThrownBy(() -> memoryBudget.acquire(1, 10))
+                .isInstanceOf(MemoryBudgetExceededException.class);
+        memoryBudget.release(100);
+
+        memoryBudget.acquire(80, 10);
+        assertThatThrownBy(() -> memoryBudget.acquire(30, 10))
+                .isInstanceOf(MemoryBudgetExceededException.class)
+                .hasMessageStartingWith("Too many case files are validated at the moment");
+        assertThat(memoryBudget.getAvailable()).isEqualTo(20);
+    }
+
+    @Test
+    void estimateMemoryCostTest() {
+        V4CaseFileValidator_1 validator = new V4CaseFileValidator_1();
+
+        // large files are validated case by case
+        assertThat(validator.estimateMemoryCost(1024 * 1024)).isEqualTo(6 * 1024 * 1024);
+        assertThat(validator.estimateMemoryCost(20 * 1024 * 1024)).isEqualTo(28 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,29 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SizeLimitedInputStreamTest {
+
+    @Test
+    void limitTest() throws Exception {
+        // exactly at limit
+        SizeLimitedInputStream inputStream = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[100]), 100);
+        assertThat(ByteStreams.toByteArray(inputStream)).hasSize(100);
+        assertThat(inputStream.getCount()).isEqualTo(100);
+
+        // fails on the read crossing the limit, not at the end of stream
+        InputStream overLimitStream = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[1000]), 100);
+        assertThat(overLimitStream.read(new byte[60])).isEqualTo(60);
+        assertThatThrownBy(() -> overLimitStream.read(new byte[60]))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Case file is too large. Limit");
+    }
+}
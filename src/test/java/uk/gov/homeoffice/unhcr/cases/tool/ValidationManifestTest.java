@@ -0,0 +1,178 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.ImageProbe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValidationManifestTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+    }
+
+    @Test
+    void replayTest() throws Exception {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        File manifestFile = new File(tempDir, "manifest.jsonl");
+        File caseFile = new File(tempDir, "case.xml");
+        byte[] bytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST-CrossReference.xml", getClass().getClassLoader());
+        FileUtils.writeByteArrayToFile(caseFile, bytes);
+
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, 1, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+            batchValidator.setValidationManifest(validationManifest);
+
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isEmpty();
+            assertThat(batchValidator.validate(Arrays.asList(caseFile), validationResult -> {})).isEqualTo(1);
+        }
+
+        // interrupted run leaves incomplete line
+        FileUtils.writeStringToFile(manifestFile, "{\"path\":\"case", StandardCharsets.UTF_8, true);
+
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            Optional<ValidationResult> optionalValidationResult = validationManifest.lookup(CaseFileSource.ofFile(caseFile));
+            assertThat(optionalValidationResult).isPresent();
+            assertThat(optionalValidationResult.get().getFileName()).isEqualTo(caseFile.getPath());
+            assertThat(optionalValidationResult.get().getValidatorId()).isEqualTo("v4");
+            assertThat(optionalValidationResult.get().getErrors()).containsExactly(
+                    "Duplicated 'DataProcessGroupCrossReference'(s): 100-16C00000-RST-01 to 100-16C00002-RST-01"
+            );
+
+            // touched, but the same content
+            assertThat(caseFile.setLastModified(caseFile.lastModified() - 60_000)).isTrue();
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isPresent();
+
+            // changed content (of the same size)
+            bytes[bytes.length - 2] = ' ';
+            FileUtils.writeByteArrayToFile(caseFile, bytes);
+            assertThat(caseFile.setLastModified(caseFile.lastModified() - 120_000)).isTrue();
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isEmpty();
+
+            // validator set is part of the key
+            try (ValidationManifest otherValidatorsManifest = new ValidationManifest(new File(tempDir, "other.jsonl"), BaseCaseFileValidator.getValidators(Arrays.asList("v4")))) {
+                assertThat(otherValidatorsManifest.lookup(CaseFileSource.ofFile(caseFile))).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    void optionsFingerprintTest() throws IOException {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        File manifestFile = new File(tempDir, "manifest.jsonl");
+        File caseFile = new File(tempDir, "case.xml");
+        FileUtils.writeStringToFile(caseFile, "<html/>", StandardCharsets.UTF_8);
+
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.addError("Could not find applicable validator");
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            validationManifest.record(CaseFileSource.ofFile(caseFile), ValidationResultCache.hash("<html/>".getBytes(StandardCharsets.UTF_8)), validationResult);
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isPresent();
+
+            // options changing results are part of the key (as of result cache)
+            ReferenceData.showSuggestedValuesFlag = true;
+            try {
+                assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isEmpty();
+            } finally {
+                ReferenceData.showSuggestedValuesFlag = false;
+            }
+
+            ImageProbe.strictModeFlag = !ImageProbe.strictModeFlag;
+            try {
+                assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isEmpty();
+            } finally {
+                ImageProbe.strictModeFlag = !ImageProbe.strictModeFlag;
+            }
+
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isPresent();
+        }
+    }
+
+    @Test
+    void compactTest() throws IOException {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        File manifestFile = new File(tempDir, "manifest.jsonl");
+        File caseFile = new File(tempDir, "case.xml");
+        FileUtils.writeStringToFile(caseFile, "<html/>", StandardCharsets.UTF_8);
+
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.addError("Could not find applicable validator");
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            for (int index = 0; index < 5; index++) validationManifest.record(CaseFileSource.ofFile(caseFile), ValidationResultCache.hash("<html/>".getBytes(StandardCharsets.UTF_8)), validationResult);
+        }
+        assertThat(FileUtils.readLines(manifestFile, StandardCharsets.UTF_8)).hasSize(5);
+
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            assertThat(validationManifest.lookup(CaseFileSource.ofFile(caseFile))).isPresent();
+        }
+        assertThat(FileUtils.readLines(manifestFile, StandardCharsets.UTF_8)).hasSize(1);
+    }
+
+    @Test
+    void recordAfterIncompleteLineTest() throws IOException {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        File manifestFile = new File(tempDir, "manifest.jsonl");
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.addError("x");
+
+        List<File> caseFiles = new ArrayList<>();
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            for (int index = 0; index < 4; index++) {
+                File caseFile = new File(tempDir, String.format("a%d.xml", index));
+                FileUtils.writeStringToFile(caseFile, caseFile.getName(), StandardCharsets.UTF_8);
+                validationManifest.record(CaseFileSource.ofFile(caseFile), ValidationResultCache.hash(caseFile.getName().getBytes(StandardCharsets.UTF_8)), validationResult);
+                caseFiles.add(caseFile);
+            }
+        }
+
+        // interrupted run leaves incomplete line, next entry is not appended to it
+        FileUtils.writeStringToFile(manifestFile, "{\"path\":\"a9.xml\",\"size\":5,\"errors\":[\"x\"],\"warn", StandardCharsets.UTF_8, true);
+        File caseFile = new File(tempDir, "b.xml");
+        FileUtils.writeStringToFile(caseFile, "b.xml", StandardCharsets.UTF_8);
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            validationManifest.record(CaseFileSource.ofFile(caseFile), ValidationResultCache.hash("b.xml".getBytes(StandardCharsets.UTF_8)), validationResult);
+        }
+        caseFiles.add(caseFile);
+
+        assertThat(FileUtils.readLines(manifestFile, StandardCharsets.UTF_8)).hasSize(5).noneMatch(line -> line.contains("warn{"));
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            for (File recordedFile : caseFiles) assertThat(validationManifest.lookup(CaseFileSource.ofFile(recordedFile))).isPresent();
+        }
+    }
+
+    @Test
+    void recordValidatedContentHashTest() throws Exception {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        File manifestFile = new File(tempDir, "manifest.jsonl");
+        File caseFile = new File(tempDir, "case.xml");
+        byte[] bytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", getClass().getClassLoader());
+        FileUtils.writeByteArrayToFile(caseFile, bytes);
+
+        try (ValidationManifest validationManifest = new ValidationManifest(manifestFile, validators)) {
+            CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(validators, 1, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+            batchValidator.setValidationManifest(validationManifest);
+            batchValidator.validate(Arrays.asList(caseFile), validationResult -> {});
+        }
+
+        // hash of content read by validators
+        assertThat(FileUtils.readFileToString(manifestFile, StandardCharsets.UTF_8)).contains(String.format("\"sha256\":\"%s\"", ValidationResultCache.hash(bytes)));
+    }
+}
@@ -0,0 +1,48 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValidationResultCacheTest {
+
+    @Test
+    void lookupTest(@TempDir File cacheDirectory) throws Exception {
+        List<BaseCaseFileValidator> validators = BaseCaseFileValidator.getValidators();
+        String contentHash = ValidationResultCache.hash("<UNHCR_RRF/>".getBytes(StandardCharsets.UTF_8));
+
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setFileName("case.xml");
+        validationResult.setValidator("v4", "V4CaseFileValidator_1");
+        validationResult.addError("Invalid value");
+
+        ValidationResultCache resultCache = new ValidationResultCache(cacheDirectory);
+        assertThat(resultCache.lookup(contentHash, validators)).isEmpty();
+        resultCache.put(contentHash, validators, validationResult);
+
+        Optional<ValidationResult> cachedResult = resultCache.lookup(contentHash, validators);
+        assertThat(cachedResult).isPresent();
+        assertThat(cachedResult.get().getFileName()).isNull();
+        assertThat(cachedResult.get().getValidatorId()).isEqualTo("v4");
+        assertThat(cachedResult.get().getErrors()).containsExactly("Invalid value");
+
+        // other validator set is a different key
+        assertThat(resultCache.lookup(contentHash, BaseCaseFileValidator.getValidators(Collections.singletonList("v3")))).isEmpty();
+
+        // disk tier survives restart
+        ValidationResultCache restartedResultCache = new ValidationResultCache(cacheDirectory);
+        assertThat(restartedResultCache.lookup(contentHash, validators)).isPresent();
+        assertThat(restartedResultCache.getDiskHits()).isEqualTo(1);
+
+        assertThat(resultCache.getHits()).isEqualTo(1);
+        assertThat(resultCache.getMisses()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,46 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValidationResultWriterTest {
+
+    @Test
+    void writeJsonlTest() throws IOException {
+        assertThat(write(ValidationResultWriter.Format.JSONL)).isEqualTo(
+                "{\"fileName\":\"case1.xml\",\"success\":true,\"errors\":[],\"warnings\":[]}\n" +
+                "{\"fileName\":\"case2.xml\",\"success\":false,\"errors\":[\"Error '1'\",\"Error, 2\"],\"warnings\":[\"Warning\"]}\n"
+        );
+    }
+
+    @Test
+    void writeCsvTest() throws IOException {
+        assertThat(write(ValidationResultWriter.Format.CSV)).isEqualTo(
+                "fileName,success,validatorId,errors,warnings\r\n" +
+                "case1.xml,true,,,\r\n" +
+                "case2.xml,false,,\"Error '1'\nError, 2\",Warning\r\n"
+        );
+    }
+
+    private String write(ValidationResultWriter.Format format) throws IOException {
+        ValidationResult validationResult1 = new ValidationResult();
+        validationResult1.setFileName("case1.xml");
+
+        ValidationResult validationResult2 = new ValidationResult();
+        validationResult2.setFileName("case2.xml");
+        validationResult2.addError("Error '1'");
+        validationResult2.addError("Error, 2");
+        validationResult2.addWarning("Warning");
+
+        StringWriter stringWriter = new StringWriter();
+        try (ValidationResultWriter resultWriter = new ValidationResultWriter(format, stringWriter)) {
+            resultWriter.write(validationResult1);
+            resultWriter.write(validationResult2);
+        }
+        return stringWriter.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package uk.gov.homeoffice.unhcr.cases.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValidationSummaryTest {
+
+    @Test
+    void normaliseTest() {
+        assertThat(ValidationSummary.normalise("Invalid value 'OccupationCode' value for individual 199-00265997: 999999  [allowed values: 1,11,110,...]"))
+                .isEqualTo("Invalid value 'OccupationCode' value for individual <id>: <value>");
+        assertThat(ValidationSummary.normalise("Empty (or missing) 'RegistrationDate' value for Primary Applicant 199-00265997"))
+                .isEqualTo("Empty (or missing) 'RegistrationDate' value for Primary Applicant <id>");
+        assertThat(ValidationSummary.normalise("Photo for individual '199-00265997' is too small (10 x 12)"))
+                .isEqualTo("Photo for individual <id> is too small (<n> x <n>)");
+        assertThat(ValidationSummary.normalise("None of DataLanguage objects maps to individual(s) 199-1,199-2"))
+                .isEqualTo("None of DataLanguage objects maps to individual(s) <id>");
+        assertThat(ValidationSummary.normalise("Number of individuals [3] is not equal to 'ProcessingGroupSize' value [2] in DataProcessGroup section"))
+                .isEqualTo("Number of individuals [<n>] is not equal to 'ProcessingGroupSize' value [<n>] in DataProcessGroup section");
+        assertThat(ValidationSummary.normalise("inbox/case.xml (No such file or directory)"))
+                .isEqualTo("<path> (No such file or directory)");
+    }
+
+    @Test
+    void summaryTest() {
+        ValidationSummary validationSummary = new ValidationSummary();
+        validationSummary.add(result("a/1.xml", "v4", "Empty (or missing) 'GivenName' for individual 1", "Empty (or missing) 'GivenName' for individual 2"));
+        validationSummary.add(result("a/2.xml", "v4", "Empty (or missing) 'GivenName' for individual 3"));
+        validationSummary.add(result("b.zip!/3.xml", "v3", "No 'COA' addresses for Primary Applicant 4"));
+        validationSummary.add(result("b/4.xml", "v3"));
+
+        assertThat(validationSummary.getCaseFiles()).isEqualTo(4);
+        assertThat(validationSummary.getFailedCaseFiles()).isEqualTo(3);
+
+        // template is counted once per case file
+        assertThat(validationSummary.getTopErrorTemplates().stream().map(count -> count.getCount() + " " + count.getItem()).collect(Collectors.toList()))
+                .containsExactly("2 Empty (or missing) 'GivenName' for individual <id>", "1 No 'COA' addresses for Primary Applicant <id>");
+        assertThat(validationSummary.getTopFailedDirectories().stream().map(count -> count.getCount() + " " + count.getItem()).collect(Collectors.toList()))
+                .containsExactly("2 a", "1 b.zip");
+        assertThat(validationSummary.toString()).contains("Case files: 4 (passed 1, failed 3)", "       2        2  v4", "       2        1  v3");
+    }
+
+    @Test
+    void spaceSavingCounterTest() {
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(2);
+        for (String item : "a a a b b c a d".split(" ")) counter.add(item);
+
+        // frequent item is kept exact, replaced items inherit count of the least counted one
+        assertThat(counter.getTotal()).isEqualTo(8);
+        assertThat(counter.top(2).get(0).getItem()).isEqualTo("a");
+        assertThat(counter.top(2).get(0).getCount()).isEqualTo(4);
+        assertThat(counter.top(2).get(0).isExact()).isTrue();
+        assertThat(counter.top(2).get(1).getItem()).isEqualTo("d");
+        assertThat(counter.top(2).get(1).getCount()).isEqualTo(4);
+        assertThat(counter.top(2).get(1).getError()).isEqualTo(3);
+    }
+
+    private static ValidationResult result(String fileName, String validatorId, String... errors) {
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setFileName(fileName);
+        validationResult.setValidator(validatorId, null);
+        for (String error : errors) validationResult.addError(error);
+        return validationResult;
+    }
+}
@@ -0,0 +1,150 @@
+package uk.gov.homeoffice.unhcr.cases.tool.daemon;
+
+import com.google.common.collect.AbstractIterator;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileBatchValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+import uk.gov.homeoffice.unhcr.cases.tool.impl.BaseCaseFileValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@EnabledForJreRange(min = JRE.JAVA_16)
+public class CaseFileValidatorDaemonTest {
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ReferenceData.showSuggestedValuesFlag = false;
+    }
+
+    @Test
+    void validateTest() throws Exception {
+        for (String resourceName : Arrays.asList("V4-TEST.xml", "V4-TEST-CrossReference.xml")) {
+            FileUtils.writeByteArrayToFile(new File(tempDir, "inbox/" + resourceName), IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/" + resourceName, getClass().getClassLoader()));
+        }
+
+        Path socketPath = new File(tempDir, "validator.sock").toPath();
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+        try (CaseFileValidatorDaemon daemon = new CaseFileValidatorDaemon(socketPath, batchValidator)) {
+            CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+                try {
+                    daemon.start();
+                } catch (Exception exception) {
+                    throw new RuntimeException(exception);
+                }
+            });
+            waitForDaemon(socketPath);
+
+            // only owner can connect, bind directory is removed
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+                assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(socketPath))).isEqualTo("rw-------");
+            assertThat(tempDir.list()).containsExactlyInAnyOrder("inbox", "validator.sock");
+
+            // validators stay resident between requests
+            for (int request = 0; request < 2; request++) {
+                List<ValidationResult> validationResults = new ArrayList<>();
+                int failures = CaseFileValidatorClient.validate(socketPath, Arrays.asList(tempDir.getPath() + "/inbox/*.xml", tempDir.getPath() + "/missing.xml").iterator(), validationResults::add);
+
+                assertThat(failures).isEqualTo(2);
+                assertThat(validationResults.stream().map(validationResult -> new File(validationResult.getFileName()).getName()).collect(Collectors.toList()))
+                        .containsExactlyInAnyOrder("V4-TEST.xml", "V4-TEST-CrossReference.xml", "missing.xml");
+            }
+
+            daemon.close();
+            running.get();
+        }
+
+        assertThat(socketPath).doesNotExist();
+        assertThatThrownBy(() -> CaseFileValidatorClient.validate(socketPath, Arrays.asList("any.xml").iterator(), validationResult -> {}))
+                .hasMessageStartingWith("Cannot connect to daemon");
+    }
+
+    @Test
+    void validateWhileSendingTest() throws Exception {
+        File caseFile = new File(tempDir, "V4-TEST.xml");
+        FileUtils.writeByteArrayToFile(caseFile, IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", getClass().getClassLoader()));
+
+        Path socketPath = new File(tempDir, "validator.sock").toPath();
+        CaseFileBatchValidator batchValidator = new CaseFileBatchValidator(BaseCaseFileValidator.getValidators(), 1, CaseFileBatchValidator.OutputOrder.SUBMISSION);
+        try (CaseFileValidatorDaemon daemon = new CaseFileValidatorDaemon(socketPath, batchValidator)) {
+            CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+                try {
+                    daemon.start();
+                } catch (Exception exception) {
+                    throw new RuntimeException(exception);
+                }
+            });
+            waitForDaemon(socketPath);
+
+            // second path is sent only after first result arrives (e.g. slow --files-from), daemon does not wait for whole list
+            CountDownLatch firstResult = new CountDownLatch(1);
+            Iterator<String> caseFilePaths = new AbstractIterator<String>() {
+                private int count = 0;
+
+                @Override
+                protected String computeNext() {
+                    if (count == 1) {
+                        try {
+                            if (!firstResult.await(30, TimeUnit.SECONDS)) throw new IllegalStateException("first case file was not validated");
+                        } catch (InterruptedException exception) {
+                            throw new IllegalStateException(exception);
+                        }
+                    }
+                    return (count++ < 2) ? caseFile.getPath() : endOfData();
+                }
+            };
+
+            List<ValidationResult> validationResults = new ArrayList<>();
+            int failures = CaseFileValidatorClient.validate(socketPath, caseFilePaths, validationResult -> {
+                validationResults.add(validationResult);
+                firstResult.countDown();
+            });
+
+            assertThat(failures).isEqualTo(0);
+            assertThat(validationResults).hasSize(2);
+
+            daemon.close();
+            running.get();
+        }
+    }
+
+    private static void waitForDaemon(Path socketPath) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try {
+                // empty request
+                CaseFileValidatorClient.validate(socketPath, Collections.emptyIterator(), validationResult -> {});
+                return;
+            } catch (IOException exception) {
+                if (System.currentTimeMillis() > deadline) throw new IllegalStateException("daemon has not started", exception);
+                Thread.sleep(10);
+            }
+        }
+    }
+}
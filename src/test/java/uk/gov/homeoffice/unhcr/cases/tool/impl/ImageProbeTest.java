@@ -0,0 +1,46 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ImageProbeTest {
+
+    @Test
+    void probeTest() throws IOException {
+        for (String formatName : new String[] { "png", "jpeg", "gif" }) {
+            byte[] bytes = createImage(formatName, 40, 30);
+
+            for (boolean strictFlag : new boolean[] { false, true }) {
+                ImageProbe imageProbe = ImageProbe.probe(new ByteArrayInputStream(bytes), strictFlag);
+                assertThat(imageProbe.getFormatName()).isEqualToIgnoringCase(formatName);
+                assertThat(imageProbe.getWidth()).isEqualTo(40);
+                assertThat(imageProbe.getHeight()).isEqualTo(30);
+            }
+        }
+    }
+
+    @Test
+    void probeUnknownFormatTest() {
+        byte[] bytes = "not an image".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> ImageProbe.probe(new ByteArrayInputStream(bytes)))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unknown image format");
+    }
+
+    private byte[] createImage(String formatName, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, formatName, outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,71 @@
+package uk.gov.homeoffice.unhcr.cases.tool.impl;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhotoInspectionTest {
+
+    @Test
+    void inspectTest() throws IOException {
+        byte[] bytes = createImage("png", 40, 30);
+
+        PhotoInspection photoInspection = PhotoInspection.inspect(Base64.getEncoder().encodeToString(bytes));
+        assertThat(photoInspection.isBlank()).isFalse();
+        assertThat(photoInspection.isBase64Error()).isFalse();
+        assertThat(photoInspection.getDecodedSize()).isEqualTo(bytes.length);
+        assertThat(photoInspection.getImageProbe().getWidth()).isEqualTo(40);
+        assertThat(photoInspection.getImageProbe().getHeight()).isEqualTo(30);
+    }
+
+    @Test
+    void inspectStreamReaderTest() throws IOException, XMLStreamException {
+        byte[] bytes = createImage("jpeg", 40, 30);
+
+        //text split by comment (as parser may return it in several events)
+        String base64 = Base64.getEncoder().encodeToString(bytes);
+        String xml = "<Photo>" + base64.substring(0, 100) + "<!-- comment -->" + base64.substring(100) + "</Photo>";
+
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        xmlStreamReader.nextTag();
+
+        PhotoInspection photoInspection = PhotoInspection.inspect(xmlStreamReader);
+        assertThat(xmlStreamReader.isEndElement()).isTrue();
+        assertThat(photoInspection.isBase64Error()).isFalse();
+        assertThat(photoInspection.getDecodedSize()).isEqualTo(bytes.length);
+        assertThat(photoInspection.getImageProbe().getFormatName()).isEqualToIgnoringCase("jpeg");
+    }
+
+    @Test
+    void inspectInvalidTest() throws IOException {
+        assertThat(PhotoInspection.inspect("  \n ").isBlank()).isTrue();
+        assertThat(PhotoInspection.inspect("").getDecodedSize()).isEqualTo(0);
+        assertThat(PhotoInspection.inspect("not base64!").isBase64Error()).isTrue();
+        assertThat(PhotoInspection.inspect("YWJj====").isBase64Error()).isTrue();
+
+        //text after padding is rejected, as by Base64.Decoder.decode()
+        assertThat(PhotoInspection.inspect("YWI=YWI=").isBase64Error()).isTrue();
+
+        PhotoInspection photoInspection = PhotoInspection.inspect(Base64.getEncoder().encodeToString("not an image".getBytes()));
+        assertThat(photoInspection.isBase64Error()).isFalse();
+        assertThat(photoInspection.getImageProbe()).isNull();
+        assertThat(photoInspection.getImageErrorMessage()).isEqualTo("Unknown image format");
+    }
+
+    private byte[] createImage(String formatName, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, formatName, outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -1,12 +1,18 @@
 package uk.gov.homeoffice.unhcr.cases.tool.impl;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
 import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -65,4 +71,59 @@ public class V4CaseFileValidator_1Test {
         assertThat(validationResult.getWarnings()).isEmpty();
         assertThat(validationResult.isSuccess()).isFalse();
     }
+
+    @Test
+    void validateConcurrentTest() throws Exception {
+        byte[] bytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", getClass().getClassLoader());
+        byte[] bytesCrossReference = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST-CrossReference.xml", getClass().getClassLoader());
+
+        BaseCaseFileValidator validator = new V4CaseFileValidator_1();
+
+        //pooled parsers are shared between threads and must not leak state between files
+        List<ValidationResult> validationResults = IntStream.range(0, 32).parallel()
+                .mapToObj(index -> validator.validate((index % 2 == 0) ? bytes : bytesCrossReference))
+                .collect(Collectors.toList());
+
+        for (int index = 0; index < validationResults.size(); index++) {
+            assertThat(validationResults.get(index).isSuccess()).isEqualTo(index % 2 == 0);
+        }
+    }
+
+    @Test
+    void validateCaseByCaseTest() throws IOException {
+        V4CaseFileValidator_1 validator = new V4CaseFileValidator_1();
+
+        for (String resourcePath : new String[] {
+                "uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml",
+                "uk/gov/homeoffice/unhcr/cases/test/V4-TEST-Minimal.xml",
+                "uk/gov/homeoffice/unhcr/cases/test/V4-TEST-CrossReference.xml"
+        }) {
+            byte[] bytes = IOUtils.resourceToByteArray(resourcePath, getClass().getClassLoader());
+
+            //streaming mode must report the same errors, in the same order
+            ValidationResult validationResult = validator.validate(bytes);
+            ValidationResult validationResultCaseByCase = validator.validateCaseByCase(new ByteArrayInputStream(bytes));
+            assertThat(validationResultCaseByCase.getErrors()).containsExactlyElementsOf(validationResult.getErrors());
+            assertThat(validationResultCaseByCase.getWarnings()).containsExactlyElementsOf(validationResult.getWarnings());
+            assertThat(validationResultCaseByCase.getValidatorId()).isEqualTo(V4CaseFileValidator_1.ID);
+        }
+    }
+
+    @Test
+    void validateCaseByCaseUnexpectedElementTest() throws IOException {
+        V4CaseFileValidator_1 validator = new V4CaseFileValidator_1();
+
+        // element unknown to schema, inside CASE and at top level
+        String caseFile = IOUtils.resourceToString("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", StandardCharsets.UTF_8, getClass().getClassLoader());
+        caseFile = StringUtils.replaceOnce(caseFile, "<CASE>", "<Bogus>top</Bogus><CASE><Bogus><Nested>x</Nested></Bogus>");
+        assertThat(caseFile).contains("<Bogus>");
+        byte[] bytes = caseFile.getBytes(StandardCharsets.UTF_8);
+
+        // files over streaming threshold are not judged differently
+        ValidationResult validationResult = validator.validate(bytes);
+        ValidationResult validationResultCaseByCase = validator.validateCaseByCase(new ByteArrayInputStream(bytes));
+        assertThat(validationResultCaseByCase.getErrors()).containsExactlyElementsOf(validationResult.getErrors());
+        assertThat(validationResultCaseByCase.getWarnings()).containsExactlyElementsOf(validationResult.getWarnings());
+        assertThat(validationResultCaseByCase.isSuccess()).isEqualTo(validationResult.isSuccess());
+    }
 }
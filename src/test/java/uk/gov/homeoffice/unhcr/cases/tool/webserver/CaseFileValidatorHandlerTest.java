@@ -0,0 +1,254 @@
+package uk.gov.homeoffice.unhcr.cases.tool.webserver;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.gov.homeoffice.unhcr.cases.reference.ReferenceData;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileValidator;
+import uk.gov.homeoffice.unhcr.cases.tool.MemoryBudget;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResultCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// handler behind the same GzipHandler as web server, requests are sent through in-memory connector
+public class CaseFileValidatorHandlerTest {
+
+    final static private String UNKNOWN_HASH = "0000000000000000000000000000000000000000000000000000000000000000";
+
+    private static ValidationResultCache previousResultCache;
+
+    private static Server server;
+
+    private static LocalConnector connector;
+
+    private static byte[] caseFileBytes;
+
+    private static String contentHash;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        ReferenceData.showSuggestedValuesFlag = false;
+        previousResultCache = CaseFileValidator.resultCache;
+        CaseFileValidator.resultCache = new ValidationResultCache(null);
+
+        caseFileBytes = IOUtils.resourceToByteArray("uk/gov/homeoffice/unhcr/cases/test/V4-TEST.xml", CaseFileValidatorHandlerTest.class.getClassLoader());
+        contentHash = ValidationResultCache.hash(caseFileBytes);
+
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+        server.setHandler(CaseFileValidatorWebServer.createGzipHandler(new CaseFileValidatorHandler(2, 4)));
+        server.start();
+    }
+
+    @AfterAll
+    static void teardown() throws Exception {
+        server.stop();
+        CaseFileValidator.resultCache = previousResultCache;
+    }
+
+    @Test
+    void validateETagTest() throws Exception {
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.getContent()).contains("\"success\": true");
+    }
+
+    @Test
+    void validateIfNoneMatchTest() throws Exception {
+        request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+        // known result is sent without body being read (empty body would be 'No case file provided')
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("If-None-Match", "W/\"" + UNKNOWN_HASH + "\", \"" + contentHash.toUpperCase() + "\""), new byte[0]);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.getContent()).contains("\"success\": true");
+
+        // unknown result, body is validated
+        response = request("POST", "/api/v1/validate", headers("If-None-Match", "\"" + UNKNOWN_HASH + "\""), new byte[0]);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContent()).contains("No case file provided");
+    }
+
+    @Test
+    void resultTest() throws Exception {
+        request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+        HttpTester.Response response = request("GET", "/api/v1/result/" + contentHash, headers(), null);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.get("Cache-Control")).isEqualTo("no-cache");
+        assertThat(response.getContent()).contains("\"success\": true");
+
+        response = request("GET", "/api/v1/result/" + contentHash, headers("If-None-Match", "\"" + contentHash + "\""), null);
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.getContent()).isEmpty();
+
+        response = request("GET", "/api/v1/result/" + UNKNOWN_HASH, headers(), null);
+        assertThat(response.getStatus()).isEqualTo(404);
+
+        response = request("GET", "/api/v1/result/not-a-hash", headers(), null);
+        assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    void resultHeadTest() throws Exception {
+        request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+        // HEAD response has no body (parser of HttpTester would expect one)
+        String response = connector.getResponse(String.format("HEAD /api/v1/result/%s HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n", contentHash));
+        assertThat(response).startsWith("HTTP/1.1 200 ");
+        assertThat(response).contains("ETag: \"" + contentHash + "\"");
+        assertThat(response).doesNotContain("success");
+
+        response = connector.getResponse(String.format("HEAD /api/v1/result/%s HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n", UNKNOWN_HASH));
+        assertThat(response).startsWith("HTTP/1.1 404 ");
+    }
+
+    @Test
+    void resultGzipETagTest() throws Exception {
+        request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+        // compressed response has ETag of GzipHandler ('<sha256>--gzip')
+        HttpTester.Response response = request("GET", "/api/v1/result/" + contentHash, headers("Accept-Encoding", "gzip"), null);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "--gzip\"");
+        assertThat(gunzip(response.getContentBytes())).contains("\"success\": true");
+
+        // sent back, it matches the content hash
+        response = request("GET", "/api/v1/result/" + contentHash, headers("Accept-Encoding", "gzip", "If-None-Match", "\"" + contentHash + "--gzip\""), null);
+        assertThat(response.getStatus()).isEqualTo(304);
+
+        response = request("POST", "/api/v1/validate", headers("Accept-Encoding", "gzip", "If-None-Match", "\"" + contentHash + "--gzip\""), new byte[0]);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(gunzip(response.getContentBytes())).contains("\"success\": true");
+    }
+
+    @Test
+    void validateGzipBodyTest() throws Exception {
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("Content-Encoding", "gzip"), gzip(caseFileBytes));
+
+        // ETag is hash of decompressed case file
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.getContent()).contains("\"success\": true");
+    }
+
+    @Test
+    void validateDeflateBodyTest() throws Exception {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream outputStream = new DeflaterOutputStream(deflated)) {
+            outputStream.write(caseFileBytes);
+        }
+
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("Content-Encoding", "deflate"), deflated.toByteArray());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.get("ETag")).isEqualTo("\"" + contentHash + "\"");
+        assertThat(response.getContent()).contains("\"success\": true");
+    }
+
+    @Test
+    void validateGzipBombTest() throws Exception {
+        // small upload, decompressed over case file size limit
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+            byte[] zeros = new byte[1024 * 1024];
+            for (long written = 0; written <= CaseFileValidator.CASEFILE_SIZE_LIMIT; written += zeros.length) outputStream.write(zeros);
+        }
+        assertThat(compressed.size()).isLessThan(CaseFileValidator.CASEFILE_SIZE_LIMIT / 100);
+
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("Content-Encoding", "gzip"), compressed.toByteArray());
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(response.getContent()).contains("Case file is too large");
+    }
+
+    @Test
+    void validateUnknownEncodingTest() throws Exception {
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("Content-Encoding", "br"), caseFileBytes);
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(response.getContent()).contains("Unsupported Content-Encoding br");
+    }
+
+    @Test
+    void validateCorruptGzipBodyTest() throws Exception {
+        HttpTester.Response response = request("POST", "/api/v1/validate", headers("Content-Encoding", "gzip"), caseFileBytes);
+
+        assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    void validateMemoryBudgetExceededTest() throws Exception {
+        // other validations hold the whole memory budget
+        MemoryBudget memoryBudget = MemoryBudget.getDefault();
+        long previousAdmissionTimeoutMillis = CaseFileValidatorHandler.admissionTimeoutMillis;
+        long memoryReserved = memoryBudget.acquire(memoryBudget.getCapacity());
+        CaseFileValidatorHandler.admissionTimeoutMillis = 100;
+        try {
+            HttpTester.Response response = request("POST", "/api/v1/validate", headers(), caseFileBytes);
+
+            // overload, not bad request
+            assertThat(response.getStatus()).isEqualTo(503);
+            assertThat(response.get("Retry-After")).isEqualTo(String.valueOf(CaseFileValidatorHandler.retryAfterSeconds));
+            assertThat(response.getContent()).contains("Too many case files are validated at the moment");
+        } finally {
+            CaseFileValidatorHandler.admissionTimeoutMillis = previousAdmissionTimeoutMillis;
+            memoryBudget.release(memoryReserved);
+        }
+
+        assertThat(request("POST", "/api/v1/validate", headers(), caseFileBytes).getStatus()).isEqualTo(200);
+    }
+
+    static HttpTester.Response request(String method, String uri, Map<String, String> headers, byte[] content) throws Exception {
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod(method);
+        request.setURI(uri);
+        request.setVersion("HTTP/1.1");
+        request.put("Host", "localhost");
+        request.put("Connection", "close");
+        for (Map.Entry<String, String> header : headers.entrySet()) request.put(header.getKey(), header.getValue());
+        if (content != null) request.setContent(content);
+        return HttpTester.parseResponse(connector.getResponse(request.generate()));
+    }
+
+    // name, value, name, value, ...
+    static Map<String, String> headers(String... namesAndValues) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int index = 0; index < namesAndValues.length; index += 2) headers.put(namesAndValues[index], namesAndValues[index + 1]);
+        return headers;
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
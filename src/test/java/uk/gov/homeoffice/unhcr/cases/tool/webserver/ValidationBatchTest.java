@@ -0,0 +1,146 @@
+package uk.gov.homeoffice.unhcr.cases.tool.webserver;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.homeoffice.unhcr.cases.tool.CaseFileSource;
+import uk.gov.homeoffice.unhcr.cases.tool.ValidationResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ValidationBatchTest {
+
+    @Test
+    void validateOnBusyExecutorTest() throws Exception {
+        // the only executor thread is busy, batch tasks wait in its queue (they are not run by calling thread)
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            List<String> threadNames = new CopyOnWriteArrayList<>();
+            ValidationBatch validationBatch = new ValidationBatch(executor, caseFileSource -> {
+                threadNames.add(Thread.currentThread().getName());
+                ValidationResult validationResult = new ValidationResult();
+                validationResult.setFileName(caseFileSource.getName());
+                return validationResult;
+            });
+
+            List<CaseFileSource> caseFileSources = IntStream.range(0, 5)
+                    .mapToObj(index -> CaseFileSource.ofBytes(String.format("case%d.xml", index), new byte[0]))
+                    .collect(Collectors.toList());
+
+            List<String> fileNames = new ArrayList<>();
+            CompletableFuture<Void> batch = CompletableFuture.runAsync(() -> {
+                try {
+                    validationBatch.validate(caseFileSources.iterator(), validationResult -> fileNames.add(validationResult.getFileName()));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertThat(batch.isDone()).isFalse();
+
+            blocker.countDown();
+            batch.get(5, TimeUnit.SECONDS);
+
+            assertThat(fileNames).containsExactlyInAnyOrder("case0.xml", "case1.xml", "case2.xml", "case3.xml", "case4.xml");
+            assertThat(threadNames).hasSize(5).doesNotContain(Thread.currentThread().getName()).allMatch(threadName -> threadName.startsWith("pool-"));
+        } finally {
+            blocker.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectOnFullExecutorTest() throws Exception {
+        // the only executor thread is busy and queue is full
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            for (int index = 0; index < 2; index++) {
+                executor.execute(() -> {
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            List<String> discardedNames = new ArrayList<>();
+            ValidationBatch validationBatch = new ValidationBatch(executor, caseFileSource -> new ValidationResult(), caseFileSource -> discardedNames.add(caseFileSource.getName()));
+
+            // batch with nothing validated yet is rejected, case file taken from iterator is discarded
+            assertThatThrownBy(() -> validationBatch.validate(
+                    Collections.singletonList(CaseFileSource.ofBytes("case0.xml", new byte[0])).iterator(),
+                    validationResult -> {}
+            )).isInstanceOf(RejectedExecutionException.class);
+            assertThat(discardedNames).containsExactly("case0.xml");
+        } finally {
+            blocker.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void discardOnAbortedBatchTest() throws Exception {
+        // executor thread is busy, so some tasks are still waiting when batch is aborted
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10));
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            Map<String, Integer> claims = new ConcurrentHashMap<>();
+            ValidationBatch validationBatch = new ValidationBatch(
+                    executor,
+                    caseFileSource -> {
+                        claims.merge(caseFileSource.getName(), 1, Integer::sum);
+                        return new ValidationResult();
+                    },
+                    caseFileSource -> claims.merge(caseFileSource.getName(), 1, Integer::sum)
+            );
+
+            // e.g. batch over limit
+            Iterator<CaseFileSource> caseFileSources = IntStream.range(0, 5)
+                    .mapToObj(index -> {
+                        if (index == 4) throw new IllegalStateException("Batch is too large");
+                        return CaseFileSource.ofBytes(String.format("case%d.xml", index), new byte[0]);
+                    })
+                    .iterator();
+
+            assertThatThrownBy(() -> validationBatch.validate(caseFileSources, validationResult -> {}))
+                    .isInstanceOf(IllegalStateException.class);
+
+            // each case file taken from iterator is either validated or discarded, once
+            blocker.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(claims).containsOnlyKeys("case0.xml", "case1.xml", "case2.xml", "case3.xml");
+            assertThat(claims.values()).containsOnly(1);
+        } finally {
+            blocker.countDown();
+            executor.shutdown();
+        }
+    }
+}